@@ -0,0 +1,56 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The group-by passes of the analytics reports over the whole history, on the fork-join pool against the same
+// pass on one thread. To see how it scales, run it with -jvmArgsAppend -XX:ActiveProcessorCount=<n> for a few n,
+// and with -p rows=50000000 (and a larger heap) for a ledger of the size the reports are meant for.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AnalyticsBenchmark {
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    // vendorMonth: many groups (every vendor in every month); week: a few hundred; vendor: a few thousand.
+    @Param({"vendorMonth", "week", "vendor"})
+    public String groups;
+
+    private Analytics analytics;
+    private Analytics.Key key;
+
+    @Setup
+    public void load() throws IOException {
+        analytics = new Analytics(BenchmarkData.ledger(rows).snapshot());
+        key = switch (groups) {
+            case "vendorMonth" -> analytics.byVendorAndMonth();
+            case "week" -> Analytics.byWeek();
+            default -> analytics.byVendor();
+        };
+    }
+
+    @Benchmark
+    public Analytics.Groups parallel() {
+        return analytics.groupBy(key, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Analytics.Groups sequential() {
+        return analytics.groupBySequentially(key, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+}
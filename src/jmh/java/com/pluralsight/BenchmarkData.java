@@ -0,0 +1,32 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+
+// Generated transactions files shared by the benchmarks. Each size is generated once with a fixed seed and kept
+// in the temp directory, so every fork and every later run measures the same rows.
+public class BenchmarkData {
+    public static final long SEED = 42;
+
+    private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "financial-tracker-bench");
+
+    public static File file(int rows) throws IOException {
+        File file = new File(DIRECTORY, "transactions-" + rows + ".csv");
+        if (!file.exists()) {
+            DIRECTORY.mkdirs();
+            File partial = new File(DIRECTORY, file.getName() + ".tmp");
+            new LedgerGenerator(SEED).write(partial, rows);
+            if (!partial.renameTo(file)) {
+                throw new IOException("Could not move " + partial + " to " + file);
+            }
+        }
+        return file;
+    }
+
+    // The file loaded and indexed the way FinancialTracker.loadTransactions does it.
+    public static Ledger ledger(int rows) throws IOException {
+        TransactionStore store = new TransactionStore();
+        new TransactionLoader(file(rows)).load(store);
+        return new Ledger(store);
+    }
+}
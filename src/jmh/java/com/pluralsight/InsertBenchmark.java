@@ -0,0 +1,81 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Adding one transaction (writeTransaction) to a ledger that already holds `rows` rows, at a random date,
+// so every insert has to find its place in the date order.
+// `append` also writes the record to a file; fsync is left to every 10000 records so the disk does not dominate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class InsertBenchmark {
+    private static final int PREPARED = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Ledger ledger;
+    private Transaction[] transactions;
+    private int next;
+    private File file;
+    private TransactionWriter writer;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        LedgerGenerator generator = new LedgerGenerator(BenchmarkData.SEED + 1);
+        transactions = new Transaction[PREPARED];
+        for (int i = 0; i < PREPARED; i++) {
+            transactions[i] = generator.transaction();
+        }
+        file = Files.createTempFile("insert-benchmark", ".csv").toFile();
+    }
+
+    // A fresh ledger each iteration, so it doesn't keep growing over the whole run.
+    @Setup(Level.Iteration)
+    public void load() throws IOException {
+        ledger = BenchmarkData.ledger(rows);
+        writer = TransactionWriter.open(file, TransactionWriter.SyncPolicy.EVERY_RECORDS, 10_000);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        writer.close();
+        Files.newOutputStream(file.toPath()).close(); // Start the next iteration with an empty file
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void add() {
+        ledger.add(transactions[next++ & (PREPARED - 1)]);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        Transaction transaction = transactions[next++ & (PREPARED - 1)];
+        writer.append(transaction);
+        ledger.add(transaction);
+    }
+}
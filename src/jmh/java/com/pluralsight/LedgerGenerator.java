@@ -0,0 +1,137 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Writes synthetic transactions files for the benchmarks, from a thousand rows to hundreds of millions.
+// The same row count and seed always give the same file, so runs on different machines compare.
+//
+// Vendors follow a Zipf distribution: a handful of vendors (groceries, fuel, online shopping) account for most
+// rows and thousands of small vendors appear only now and then, like a real bank export. Rows are in date order
+// with about 2% entered late, and 5% of the amounts are whole numbers without decimals.
+//
+// Usage: java -cp target/benchmarks.jar com.pluralsight.LedgerGenerator <rows> [file] [seed]
+public class LedgerGenerator {
+    private static final String[] COMMON_VENDORS = {
+            "Walmart", "Amazon", "Shell", "Starbucks", "Target", "Costco", "Kroger", "Uber", "Netflix", "Spotify",
+            "Home Depot", "CVS Pharmacy", "McDonald's", "Chevron", "Apple", "ABC Apartments", "Comcast", "Lyft",
+            "Trader Joe's", "Whole Foods", "Best Buy", "Udemy", "Cheesecake Factory", "Walgreens", "Delta Air Lines"
+    };
+    private static final String[] PAYMENT_DESCRIPTIONS = {
+            "Grocery shopping", "Gasoline", "Coffee", "Online order", "Dinner with friends", "Monthly rent payment",
+            "Streaming subscription", "Ride", "Pharmacy", "Household supplies", "Electronics", "Online course subscription",
+            "Lunch", "Flight", "Internet bill", "Gift", "Clothing", "Car maintenance", "Gym membership", "Books"
+    };
+    private static final String[] DEPOSIT_DESCRIPTIONS = {
+            "Salary deposit", "Invoice paid", "Refund", "Transfer from savings", "Interest", "Cashback"
+    };
+    private static final int VENDORS = 5_000;
+    private static final double ZIPF_EXPONENT = 1.1;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1);
+    private static final int DAYS = 3_650;
+
+    private final SplittableRandom random;
+    private final double[] cumulative = new double[VENDORS]; // Zipf CDF over the vendor ranks.
+    private final String[] vendors = new String[VENDORS];
+
+    public LedgerGenerator(long seed) {
+        random = new SplittableRandom(seed);
+        double total = 0;
+        for (int rank = 0; rank < VENDORS; rank++) {
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+            vendors[rank] = rank < COMMON_VENDORS.length ? COMMON_VENDORS[rank] : "Vendor " + rank;
+        }
+        for (int rank = 0; rank < VENDORS; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long rows = Long.parseLong(args[0]);
+        File file = new File(args.length > 1 ? args[1] : "transactions.csv");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        long start = System.nanoTime();
+        new LedgerGenerator(seed).write(file, rows);
+        System.out.printf("Wrote %d rows to %s in %d ms%n", rows, file, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // A vendor drawn with the Zipf skew; rank 0 is the most common one.
+    public String vendor() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vendors[Math.min(rank < 0 ? -rank - 1 : rank, VENDORS - 1)];
+    }
+
+    public String vendor(int rank) {
+        return vendors[rank];
+    }
+
+    // One random row as a Transaction, dated anywhere in the generated range.
+    public Transaction transaction() {
+        Row row = new Row();
+        next(row);
+        return new Transaction(FIRST_DAY.plusDays(random.nextInt(DAYS)), LocalTime.ofSecondOfDay(row.second),
+                row.description, row.vendor, Money.ofCents(row.cents, row.whole ? 0 : 2));
+    }
+
+    // Writes `rows` rows spread evenly over ten years.
+    public void write(File file, long rows) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(96);
+            Row row = new Row();
+            for (long i = 0; i < rows; i++) {
+                int day = (int) (i * DAYS / Math.max(rows, 1));
+                if (random.nextInt(50) == 0) {
+                    day = Math.max(0, day - 1 - random.nextInt(30)); // Entered late
+                }
+                next(row);
+                line.setLength(0);
+                line.append(FIRST_DAY.plusDays(day)).append('|');
+                line.append(two(row.second / 3600)).append(':').append(two(row.second / 60 % 60)).append(':')
+                        .append(two(row.second % 60));
+                line.append('|').append(row.description).append('|').append(row.vendor).append('|');
+                Money.appendTo(line, row.cents, row.whole ? 0 : 2);
+                line.append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    // Draws everything of a row except its date.
+    private void next(Row row) {
+        row.vendor = vendor();
+        if (random.nextInt(100) < 12) {
+            row.description = DEPOSIT_DESCRIPTIONS[random.nextInt(DEPOSIT_DESCRIPTIONS.length)];
+            row.cents = 1_000 + (long) (Math.exp(random.nextDouble() * 6) * 5_000);
+        } else {
+            row.description = PAYMENT_DESCRIPTIONS[random.nextInt(PAYMENT_DESCRIPTIONS.length)];
+            row.cents = -(100 + (long) (Math.exp(random.nextGaussian() * 1.2) * 3_000));
+        }
+        row.whole = random.nextInt(20) == 0;
+        if (row.whole) {
+            row.cents -= row.cents % 100;
+        }
+        row.second = random.nextInt(86_400);
+    }
+
+    private static String two(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+
+    private static class Row {
+        String vendor;
+        String description;
+        long cents;
+        boolean whole; // Written without decimals.
+        int second;
+    }
+}
@@ -0,0 +1,134 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test of the HTTP API: starts a LedgerServer over a generated ledger and has `clients` threads send requests
+// back to back for a number of seconds, then reports requests per second and latency percentiles.
+// The mix is mostly month reports (first 100 rows), with vendor reports, balances and some added payments.
+// Latencies are measured from sending a request to reading the last byte of the response.
+//
+// Usage: java -cp target/benchmarks.jar com.pluralsight.LedgerServerLoadTest [rows] [clients] [seconds]
+public class LedgerServerLoadTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1); // Where LedgerGenerator starts.
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        File file = File.createTempFile("financial-tracker-load", ".csv");
+        file.deleteOnExit();
+        LedgerService service = new LedgerService(BenchmarkData.ledger(rows), file);
+        LedgerServer server = LedgerServer.start(service, 0);
+        String base = "http://localhost:" + server.getPort();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        System.out.printf("%d rows, %d clients, %d s warmup + %d s measured%n", rows, clients, seconds / 4, seconds);
+        run(http, base, clients, seconds / 4, false);
+        run(http, base, clients, seconds, true);
+        server.stop();
+        service.close();
+    }
+
+    private static void run(HttpClient http, String base, int clients, int seconds, boolean report) throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>();
+        int[] counts = new int[clients];
+        AtomicLong errors = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            long[] times = new long[1 << 20];
+            latencies.add(times);
+            int client = c;
+            threads[c] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(BenchmarkData.SEED + client);
+                LedgerGenerator vendors = new LedgerGenerator(BenchmarkData.SEED + 100 + client);
+                byte[] buffer = new byte[1 << 16];
+                while (System.nanoTime() < end && counts[client] < times.length) {
+                    HttpRequest request = request(base, random, vendors);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                        try (InputStream body = response.body()) {
+                            for (int n; (n = body.read(buffer)) > 0; ) {
+                                bytes.addAndGet(n);
+                            }
+                        }
+                        if (response.statusCode() >= 300) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    times[counts[client]++] = System.nanoTime() - start;
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!report) {
+            return;
+        }
+
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int filled = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies.get(c), 0, all, filled, counts[c]);
+            filled += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("%d requests, %.0f requests/sec, %d errors, %.1f MB received%n",
+                total, total / (double) seconds, errors.get(), bytes.get() / 1e6);
+        System.out.printf("latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 1.0));
+    }
+
+    private static HttpRequest request(String base, SplittableRandom random, LedgerGenerator vendors) {
+        int kind = random.nextInt(100);
+        HttpRequest.Builder request;
+        if (kind < 60) {
+            LocalDate from = FIRST_DAY.plusDays(random.nextInt(3_650 - 31));
+            request = HttpRequest.newBuilder(URI.create(base + "/reports/range?from=" + from + "&to=" + from.plusDays(30)
+                    + "&limit=100"));
+        } else if (kind < 80) {
+            request = HttpRequest.newBuilder(URI.create(base + "/reports/vendor?name="
+                    + URLEncoder.encode(vendors.vendor(), StandardCharsets.UTF_8) + "&limit=100"));
+        } else if (kind < 95) {
+            request = HttpRequest.newBuilder(URI.create(base + "/reports/balance?date="
+                    + FIRST_DAY.plusDays(random.nextInt(3_650))));
+        } else {
+            String body = "{\"date\":\"" + FIRST_DAY.plusDays(random.nextInt(3_650)) + "\",\"time\":\"12:00:00\","
+                    + "\"description\":\"Load test\",\"vendor\":\"" + vendors.vendor().replace("\"", "") + "\","
+                    + "\"amount\":" + Money.ofCents(1 + random.nextInt(10_000)) + "}";
+            request = HttpRequest.newBuilder(URI.create(base + "/payments"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+        return request.timeout(Duration.ofSeconds(30)).build();
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
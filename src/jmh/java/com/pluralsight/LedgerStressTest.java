@@ -0,0 +1,289 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stress test of the ledger's concurrency: `writers` threads add transactions (one at a time and in batches)
+// while `readers` threads check every snapshot they take against what its own rows say it should be:
+// - the index walks every row exactly once, in (date, time, row) order, forward and backward
+// - a date range walks the same rows as a filter over the whole index would
+// - the rollup totals of the range and of the whole ledger equal sums recomputed from the rows
+// - snapshots never lose rows, and at the end the ledger holds every row that was added.
+// Before that, a burst of `burst` threads queues one write each while another write holds the ledger, more than
+// one combining round takes. The holding thread then queues one more write behind them and combines first,
+// and every writer checks that its row is in the ledger as soon as its write returns.
+// Exits with status 1 and prints the first failures if any check fails.
+//
+// Usage: java -cp target/benchmarks.jar com.pluralsight.LedgerStressTest [rows] [writers] [readers] [seconds] [burst]
+public class LedgerStressTest {
+    private static final int FIRST_DAY = (int) LocalDate.of(2015, 1, 1).toEpochDay(); // Where LedgerGenerator starts.
+    private static final int BATCH = 100;
+    private static final int MAX_REPORTED = 10;
+    private static final long BURST_SETTLE_MILLIS = 500; // Time for the burst's writers to queue once they started.
+
+    private static final AtomicLong FAILURES = new AtomicLong();
+    private static final ConcurrentLinkedQueue<String> MESSAGES = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int burst = args.length > 4 ? Integer.parseInt(args[4]) : 6_000;
+
+        Ledger ledger = BenchmarkData.ledger(rows);
+        checkBurst(ledger, burst);
+        rows += burst + 2;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong added = new AtomicLong();
+        AtomicLong checks = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            LedgerGenerator generator = new LedgerGenerator(BenchmarkData.SEED + 1 + w);
+            SplittableRandom random = new SplittableRandom(BenchmarkData.SEED + w);
+            threads.add(new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    if (random.nextInt(10) == 0) {
+                        List<Transaction> batch = new ArrayList<>(BATCH);
+                        for (int i = 0; i < BATCH; i++) {
+                            batch.add(generator.transaction());
+                        }
+                        ledger.addAll(batch);
+                        added.addAndGet(BATCH);
+                    } else {
+                        ledger.add(generator.transaction());
+                        added.incrementAndGet();
+                    }
+                }
+            }, "stress-writer-" + w));
+        }
+        for (int r = 0; r < readers; r++) {
+            SplittableRandom random = new SplittableRandom(BenchmarkData.SEED + 100 + r);
+            threads.add(new Thread(() -> {
+                int lastSize = 0;
+                while (System.nanoTime() < end && FAILURES.get() < MAX_REPORTED) {
+                    Ledger.Snapshot snapshot = ledger.snapshot();
+                    if (snapshot.size() < lastSize) {
+                        fail("snapshot shrank from " + lastSize + " to " + snapshot.size() + " rows");
+                    }
+                    lastSize = snapshot.size();
+                    checkOrder(snapshot);
+                    int fromDay = FIRST_DAY + random.nextInt(3_650);
+                    checkRange(snapshot, fromDay, fromDay + random.nextInt(90));
+                    checks.incrementAndGet();
+                }
+            }, "stress-reader-" + r));
+        }
+
+        System.out.printf("%d rows, %d writers, %d readers, %d s%n", rows, writers, readers, seconds);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Ledger.Snapshot last = ledger.snapshot();
+        if (last.size() != rows + added.get()) {
+            fail("ledger has " + last.size() + " rows, expected " + (rows + added.get()));
+        }
+        checkOrder(last);
+        checkRange(last, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        System.out.printf("%d rows added (%.0f rows/sec), %d snapshots checked, %d failures%n",
+                added.get(), added.get() / (double) seconds, checks.get(), FAILURES.get());
+        for (String message : MESSAGES) {
+            System.out.println("FAILED: " + message);
+        }
+        if (FAILURES.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Holds the ledger in the middle of a write until `burst` other writes are queued, then adds one more write
+    // from the same thread (the lock is reentrant), whose request is last in the queue, and lets them all go.
+    // Each writer looks for its own row as soon as its write returns.
+    private static void checkBurst(Ledger ledger, int burst) throws InterruptedException {
+        int before = ledger.size();
+        AtomicInteger queued = new AtomicInteger();
+        CountDownLatch holding = new CountDownLatch(1);
+        AtomicBoolean hold = new AtomicBoolean(true);
+        // Listeners run with the ledger locked, so blocking in one keeps every other writer queued
+        ledger.addListener((snapshot, fromRow, toRow) -> {
+            if (hold.compareAndSet(true, false)) {
+                holding.countDown();
+                try {
+                    while (queued.get() < burst) {
+                        Thread.sleep(1);
+                    }
+                    Thread.sleep(BURST_SETTLE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                addAndFind(ledger, burstTransaction(burst), before);
+            }
+        });
+        Thread holder = new Thread(() -> ledger.add(burstTransaction(-1)), "stress-holder");
+        holder.start();
+        holding.await();
+
+        Thread[] threads = new Thread[burst];
+        for (int i = 0; i < burst; i++) {
+            Transaction transaction = burstTransaction(i);
+            threads[i] = new Thread(() -> {
+                queued.incrementAndGet();
+                addAndFind(ledger, transaction, before);
+            }, "stress-burst-" + i);
+            threads[i].start();
+        }
+        holder.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (ledger.size() != before + burst + 2) {
+            fail("ledger has " + ledger.size() + " rows after the burst, expected " + (before + burst + 2));
+        }
+        System.out.printf("%d writes queued behind one write: %d rows added%n", burst, ledger.size() - before);
+    }
+
+    private static void addAndFind(Ledger ledger, Transaction transaction, int fromRow) {
+        ledger.add(transaction);
+        Ledger.Snapshot snapshot = ledger.snapshot();
+        TransactionStore rows = snapshot.getRows();
+        for (int row = snapshot.size() - 1; row >= fromRow; row--) {
+            if (rows.getDescription(row).equals(transaction.getDescription())) {
+                return;
+            }
+        }
+        fail(transaction.getDescription() + " is not in the ledger after its write returned");
+    }
+
+    private static Transaction burstTransaction(int i) {
+        return new Transaction(LocalDate.of(2020, 1, 1), LocalTime.NOON, "Burst " + i, "Stress",
+                Money.ofCents(-100 - i));
+    }
+
+    // Every row exactly once, in index order both ways.
+    private static void checkOrder(Ledger.Snapshot snapshot) {
+        TransactionStore rows = snapshot.getRows();
+        PrimitiveIterator.OfInt ascending = snapshot.ascending();
+        int count = 0;
+        int previous = -1;
+        while (ascending.hasNext()) {
+            int row = ascending.nextInt();
+            if (row < 0 || row >= snapshot.size()) {
+                fail("index returned row " + row + " of a snapshot with " + snapshot.size() + " rows");
+                return;
+            }
+            if (previous >= 0 && compare(rows, previous, row) >= 0) {
+                fail("rows " + previous + " and " + row + " are out of order");
+                return;
+            }
+            previous = row;
+            count++;
+        }
+        if (count != snapshot.size()) {
+            fail("index walked " + count + " rows of a snapshot with " + snapshot.size());
+        }
+
+        PrimitiveIterator.OfInt descending = snapshot.descending();
+        int next = -1;
+        count = 0;
+        while (descending.hasNext()) {
+            int row = descending.nextInt();
+            if (next >= 0 && compare(rows, row, next) >= 0) {
+                fail("rows " + row + " and " + next + " are out of order walking backward");
+                return;
+            }
+            next = row;
+            count++;
+        }
+        if (count != snapshot.size()) {
+            fail("index walked " + count + " rows backward of a snapshot with " + snapshot.size());
+        }
+    }
+
+    // The range iterators and the rollups against sums over the rows of the range.
+    private static void checkRange(Ledger.Snapshot snapshot, int fromDay, int toDay) {
+        TransactionStore rows = snapshot.getRows();
+        long depositCents = 0;
+        long paymentCents = 0;
+        long depositCount = 0;
+        long paymentCount = 0;
+        long[] all = new long[4];
+        PrimitiveIterator.OfInt everything = snapshot.ascending();
+        while (everything.hasNext()) {
+            int row = everything.nextInt();
+            long cents = rows.getCents(row);
+            int slot = cents < 0 ? 2 : 0;
+            all[slot] += cents;
+            all[slot + 1]++;
+            int epochDay = rows.getEpochDay(row);
+            if (epochDay >= fromDay && epochDay <= toDay) {
+                if (cents < 0) {
+                    paymentCents += cents;
+                    paymentCount++;
+                } else {
+                    depositCents += cents;
+                    depositCount++;
+                }
+            }
+        }
+
+        long inRange = count(snapshot.ascending(fromDay, toDay));
+        if (inRange != depositCount + paymentCount) {
+            fail("ascending(" + fromDay + ", " + toDay + ") walked " + inRange + " rows, expected "
+                    + (depositCount + paymentCount));
+        }
+        long backward = count(snapshot.descending(fromDay, toDay));
+        if (backward != inRange) {
+            fail("descending(" + fromDay + ", " + toDay + ") walked " + backward + " rows, ascending " + inRange);
+        }
+        checkTotals("between(" + fromDay + ", " + toDay + ")", snapshot.between(fromDay, toDay),
+                depositCents, depositCount, paymentCents, paymentCount);
+        checkTotals("asOf(max)", snapshot.asOf(Integer.MAX_VALUE), all[0], all[1], all[2], all[3]);
+    }
+
+    private static void checkTotals(String what, Rollups.Totals totals, long depositCents, long depositCount,
+                                    long paymentCents, long paymentCount) {
+        if (totals.getDepositCents() != depositCents || totals.getDepositCount() != depositCount
+                || totals.getPaymentCents() != paymentCents || totals.getPaymentCount() != paymentCount) {
+            fail(what + " gave " + totals.getDepositCents() + " (" + totals.getDepositCount() + ") / "
+                    + totals.getPaymentCents() + " (" + totals.getPaymentCount() + "), rows sum to "
+                    + depositCents + " (" + depositCount + ") / " + paymentCents + " (" + paymentCount + ")");
+        }
+    }
+
+    private static long count(PrimitiveIterator.OfInt rows) {
+        long count = 0;
+        while (rows.hasNext()) {
+            rows.nextInt();
+            count++;
+        }
+        return count;
+    }
+
+    // Index order: date, then time, then row number.
+    private static int compare(TransactionStore rows, int a, int b) {
+        int byDate = Integer.compare(rows.getEpochDay(a), rows.getEpochDay(b));
+        if (byDate != 0) return byDate;
+        int byTime = Integer.compare(rows.getSecondOfDay(a), rows.getSecondOfDay(b));
+        if (byTime != 0) return byTime;
+        return Integer.compare(a, b);
+    }
+
+    private static void fail(String message) {
+        if (FAILURES.incrementAndGet() <= MAX_REPORTED) {
+            MESSAGES.add(Thread.currentThread().getName() + ": " + message);
+        }
+    }
+}
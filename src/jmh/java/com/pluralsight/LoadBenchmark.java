@@ -0,0 +1,49 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Startup: parsing the transactions file (loadTransactions) with and without building the indexes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class LoadBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private File file;
+
+    @Setup
+    public void generate() throws IOException {
+        file = BenchmarkData.file(rows);
+    }
+
+    @Benchmark
+    public TransactionStore parse() throws IOException {
+        TransactionStore store = new TransactionStore();
+        new TransactionLoader(file).load(store);
+        return store;
+    }
+
+    @Benchmark
+    public Ledger parseAndIndex() throws IOException {
+        TransactionStore store = new TransactionStore();
+        new TransactionLoader(file).load(store);
+        return new Ledger(store);
+    }
+}
@@ -0,0 +1,89 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// The reports: a month of rows by date (filterTransactionsByDate) and all rows of a vendor
+// (filterTransactionsByVendor), each with its totals, and full-text searches (searchTransactions), minus the printing.
+// Vendors are drawn with the same skew as the data, so most lookups hit a big vendor and some a rare one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class QueryBenchmark {
+    private static final int FIRST_DAY = (int) LocalDate.of(2015, 1, 1).toEpochDay(); // Where LedgerGenerator starts.
+    private static final SearchIndex.Query WORDS = SearchIndex.Query.parse("coffee starbucks OR lunch");
+    private static final SearchIndex.Query PHRASE = SearchIndex.Query.parse("\"online order\" amazon");
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Ledger.Snapshot ledger;
+    private LedgerGenerator vendors;
+    private SplittableRandom random;
+
+    @Setup
+    public void load() throws IOException {
+        ledger = BenchmarkData.ledger(rows).snapshot();
+        vendors = new LedgerGenerator(BenchmarkData.SEED + 2);
+        random = new SplittableRandom(BenchmarkData.SEED + 3);
+    }
+
+    @Benchmark
+    public Rollups.Totals filterByDate(Blackhole blackhole) {
+        int fromDay = FIRST_DAY + random.nextInt(3_650 - 31);
+        int toDay = fromDay + 30;
+        PrimitiveIterator.OfInt rows = ledger.descending(fromDay, toDay);
+        while (rows.hasNext()) {
+            blackhole.consume(ledger.getRows().getCents(rows.nextInt()));
+        }
+        return ledger.between(fromDay, toDay);
+    }
+
+    @Benchmark
+    public Rollups.Totals filterByVendor(Blackhole blackhole) {
+        String vendor = vendors.vendor();
+        int[] rows = ledger.findVendor(vendor).toArray();
+        ledger.sort(rows);
+        blackhole.consume(rows);
+        return ledger.ofVendors(List.of(vendor));
+    }
+
+    // A misspelled vendor, which falls back to the prefix and then the fuzzy lookup.
+    @Benchmark
+    public List<String> findSimilarVendor() {
+        String vendor = vendors.vendor();
+        return ledger.findSimilarVendors(vendor.substring(1));
+    }
+
+    // Two words of a description and a vendor, or a third word, over every date.
+    @Benchmark
+    public IntList searchWords() {
+        return ledger.search(WORDS, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // A phrase and a vendor word over a year, the phrase checked once per distinct description and vendor.
+    @Benchmark
+    public IntList searchPhrase() {
+        int fromDay = FIRST_DAY + random.nextInt(3_650 - 365);
+        return ledger.search(PHRASE, fromDay, fromDay + 364);
+    }
+}
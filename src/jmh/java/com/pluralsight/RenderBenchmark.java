@@ -0,0 +1,49 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Drawing the ledger table (printTransactionsTable), one page of the newest rows at a time, into a stream that
+// discards the bytes so only the rendering and the character encoding are measured. Reported per row.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class RenderBenchmark {
+    private static final int PAGE = 1000;
+
+    private Ledger.Snapshot ledger;
+    private TableRenderer table;
+
+    @Setup
+    public void load() throws IOException {
+        ledger = BenchmarkData.ledger(100_000).snapshot();
+        table = new TableRenderer(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE)
+    public void renderPage() {
+        table.head("Transaction Ledger");
+        PrimitiveIterator.OfInt rows = ledger.descending();
+        for (int i = 0; i < PAGE && rows.hasNext(); i++) {
+            table.row(ledger.getRows(), rows.nextInt());
+        }
+        table.flush();
+    }
+}
@@ -0,0 +1,389 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongUnaryOperator;
+
+// Group-by aggregation over one snapshot of the ledger, for the analytics reports: spending per vendor and month,
+// the top vendors, deposits against payments by week, and moving averages over months.
+//
+// Every report is one pass over the rows that sums the deposits and payments of each group, where a group is
+// a long key worked out from the row (a month, a week, a vendor, or a vendor and a month packed together).
+// The rows are split into ranges, a couple per processor, summed on the common fork-join pool, each into
+// a hash map of its own with the keys and sums in primitive arrays, so the threads share nothing while they count.
+// The maps are then merged pairwise on the way back up the fork-join tree.
+public class Analytics {
+    // Ranges smaller than this aren't worth a task of their own: with many distinct groups (vendors by month, say),
+    // merging their maps back together would cost more than counting them in parallel saves.
+    private static final int MIN_TASK_ROWS = 1 << 18;
+    private static final int TASKS_PER_THREAD = 2; // More ranges than threads, so a slow one doesn't hold up the rest.
+    private static final Metrics.Operation AGGREGATE = Metrics.operation("aggregate",
+            "Group-by passes of the analytics reports");
+
+    private final TransactionStore rows;
+    private final int[] vendorGroups; // Group of each vendor id: vendor names that differ only in case share one.
+    private final List<String> vendorNames; // Name of each vendor group, as first written.
+
+    public Analytics(Ledger.Snapshot snapshot) {
+        rows = snapshot.getRows();
+        vendorGroups = new int[rows.getVendorCount()];
+        vendorNames = new ArrayList<>();
+        Map<String, Integer> groupsByKey = new HashMap<>();
+        for (int vendorId = 0; vendorId < vendorGroups.length; vendorId++) {
+            String name = rows.getVendorName(vendorId);
+            Integer group = groupsByKey.get(VendorIndex.normalize(name));
+            if (group == null) {
+                group = vendorNames.size();
+                groupsByKey.put(VendorIndex.normalize(name), group);
+                vendorNames.add(name.trim());
+            }
+            vendorGroups[vendorId] = group;
+        }
+    }
+
+    // Works out the group of a row.
+    @FunctionalInterface
+    public interface Key {
+        long of(TransactionStore rows, int row);
+    }
+
+    // Sums the rows dated from `fromDay` to `toDay` (epoch days, both inclusive) by group, in parallel
+    // unless there is only one processor or too few rows to split.
+    public Groups groupBy(Key key, int fromDay, int toDay) {
+        Metrics.Timing timing = AGGREGATE.start();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Groups groups;
+        if (threads == 1 || rows.size() < 2 * MIN_TASK_ROWS) {
+            groups = aggregate(key, fromDay, toDay, 0, rows.size());
+        } else {
+            int taskRows = Math.max(MIN_TASK_ROWS, rows.size() / (threads * TASKS_PER_THREAD) + 1);
+            groups = ForkJoinPool.commonPool().invoke(new Aggregation(key, fromDay, toDay, 0, rows.size(), taskRows));
+        }
+        timing.stop(rows.size());
+        return groups;
+    }
+
+    // The same on the calling thread alone, into a single map: the baseline the parallel pass is measured against.
+    public Groups groupBySequentially(Key key, int fromDay, int toDay) {
+        return aggregate(key, fromDay, toDay, 0, rows.size());
+    }
+
+    // Groups by vendor (see `getVendorName`).
+    public Key byVendor() {
+        int[] groups = vendorGroups;
+        return (rows, row) -> groups[rows.getVendorId(row)];
+    }
+
+    // Groups by vendor and month; `vendorOfKey` and `monthOfKey` take the key apart.
+    public Key byVendorAndMonth() {
+        int[] groups = vendorGroups;
+        return (rows, row) -> (long) groups[rows.getVendorId(row)] << 32 | monthOf(rows.getEpochDay(row));
+    }
+
+    // Groups by month (see `monthOf`).
+    public static Key byMonth() {
+        return (rows, row) -> monthOf(rows.getEpochDay(row));
+    }
+
+    // Groups by week, Monday to Sunday (see `weekOf`).
+    public static Key byWeek() {
+        return (rows, row) -> weekOf(rows.getEpochDay(row));
+    }
+
+    public String getVendorName(int vendorGroup) { return vendorNames.get(vendorGroup); }
+
+    public static int vendorOfKey(long vendorAndMonth) { return (int) (vendorAndMonth >>> 32); }
+
+    public static int monthOfKey(long vendorAndMonth) { return (int) vendorAndMonth; }
+
+    // Months counted from year 0: year * 12 + month - 1, the same as YearMonth.from(LocalDate.ofEpochDay(epochDay))
+    // without making either object (the days-to-civil algorithm of H. Hinnant). Only for years from 0 on.
+    public static int monthOf(int epochDay) {
+        int shifted = epochDay + 719_468; // Days since 0000-03-01
+        int era = Math.floorDiv(shifted, 146_097);
+        int dayOfEra = shifted - era * 146_097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int marchMonth = (5 * dayOfYear + 2) / 153; // 0 for March
+        int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    public static int monthOf(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    public static YearMonth yearMonth(int month) {
+        return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    // Weeks since the Monday before 1970-01-01 (a Thursday).
+    public static int weekOf(int epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    public static LocalDate mondayOf(int week) {
+        return LocalDate.ofEpochDay(week * 7L - 3);
+    }
+
+    // Averages over the last `window` values, or over all values so far for the first ones.
+    public static long[] movingAverage(long[] values, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Can't average over " + window + " values");
+        }
+        long[] averages = new long[values.length];
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum = Math.addExact(sum, values[i]);
+            if (i >= window) {
+                sum -= values[i - window];
+            }
+            averages[i] = Math.round((double) sum / Math.min(i + 1, window));
+        }
+        return averages;
+    }
+
+    private Groups aggregate(Key key, int fromDay, int toDay, int from, int to) {
+        Groups groups = new Groups();
+        TransactionStore store = rows;
+        for (int row = from; row < to; row++) {
+            int epochDay = store.getEpochDay(row);
+            if (epochDay >= fromDay && epochDay <= toDay) {
+                groups.add(key.of(store, row), store.getCents(row));
+            }
+        }
+        return groups;
+    }
+
+    // Sums rows [from, to) by splitting the range until it is at most `taskRows` rows.
+    private class Aggregation extends RecursiveTask<Groups> {
+        private static final long serialVersionUID = 1L;
+
+        private final Key key;
+        private final int fromDay;
+        private final int toDay;
+        private final int from;
+        private final int to;
+        private final int taskRows;
+
+        Aggregation(Key key, int fromDay, int toDay, int from, int to, int taskRows) {
+            this.key = key;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.from = from;
+            this.to = to;
+            this.taskRows = taskRows;
+        }
+
+        @Override
+        protected Groups compute() {
+            if (to - from <= taskRows) {
+                return aggregate(key, fromDay, toDay, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            Aggregation left = new Aggregation(key, fromDay, toDay, from, mid, taskRows);
+            left.fork();
+            Groups right = new Aggregation(key, fromDay, toDay, mid, to, taskRows).compute();
+            Groups joined = left.join();
+            // Merge the smaller map into the bigger one
+            if (joined.size() < right.size()) {
+                right.addAll(joined);
+                return right;
+            }
+            joined.addAll(right);
+            return joined;
+        }
+    }
+
+    // Deposit and payment sums and counts by long key, in an open-addressing hash table (linear probing)
+    // with the keys and each sum in arrays of their own, so adding a row allocates nothing.
+    public static class Groups {
+        private static final long EMPTY = Long.MIN_VALUE; // Marks a free slot; no key is this.
+
+        private long[] keys;
+        private long[] depositCents;
+        private long[] depositCounts;
+        private long[] paymentCents;
+        private long[] paymentCounts;
+        private int size;
+
+        Groups() {
+            allocate(64);
+        }
+
+        public int size() { return size; }
+
+        // The keys, ascending.
+        public long[] keys() {
+            long[] sorted = new long[size];
+            int i = 0;
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    sorted[i++] = key;
+                }
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        // The totals of the group, or null if no row had that key.
+        public Rollups.Totals get(long key) {
+            int slot = find(key);
+            return slot < 0 ? null : totals(slot);
+        }
+
+        // The totals of the group, all zero if no row had that key.
+        public Rollups.Totals getOrEmpty(long key) {
+            Rollups.Totals totals = get(key);
+            return totals != null ? totals : new Rollups.Totals();
+        }
+
+        // The `n` keys with the most spent (the largest payments), most first; ties go to the smaller key.
+        // Keys without any payments aren't ranked.
+        public long[] topByPayments(int n) {
+            PriorityQueue<Integer> top = new PriorityQueue<>(this::compareSpend); // Least spent first
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && paymentCounts[slot] > 0) {
+                    top.add(slot);
+                    if (top.size() > n) {
+                        top.poll();
+                    }
+                }
+            }
+            long[] ranked = new long[top.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = keys[top.poll()];
+            }
+            return ranked;
+        }
+
+        // Groups these groups again by a coarser key, such as the vendor of a vendor and month.
+        public Groups rollUp(LongUnaryOperator key) {
+            Groups coarser = new Groups();
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    coarser.add(coarser.slot(key.applyAsLong(keys[slot])), this, slot);
+                }
+            }
+            return coarser;
+        }
+
+        // The totals of every group together.
+        public Rollups.Totals total() {
+            Rollups.Totals totals = new Rollups.Totals();
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    totals.add(totals(slot));
+                }
+            }
+            return totals;
+        }
+
+        void add(long key, long cents) {
+            int slot = slot(key);
+            if (cents < 0) {
+                paymentCents[slot] = Math.addExact(paymentCents[slot], cents);
+                paymentCounts[slot]++;
+            } else {
+                depositCents[slot] = Math.addExact(depositCents[slot], cents);
+                depositCounts[slot]++;
+            }
+        }
+
+        void addAll(Groups other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] != EMPTY) {
+                    add(slot(other.keys[slot]), other, slot);
+                }
+            }
+        }
+
+        private void add(int slot, Groups other, int otherSlot) {
+            depositCents[slot] = Math.addExact(depositCents[slot], other.depositCents[otherSlot]);
+            depositCounts[slot] += other.depositCounts[otherSlot];
+            paymentCents[slot] = Math.addExact(paymentCents[slot], other.paymentCents[otherSlot]);
+            paymentCounts[slot] += other.paymentCounts[otherSlot];
+        }
+
+        private Rollups.Totals totals(int slot) {
+            return new Rollups.Totals(depositCents[slot], depositCounts[slot], paymentCents[slot], paymentCounts[slot]);
+        }
+
+        // The larger payment (the more negative sum) compares greater.
+        private int compareSpend(int a, int b) {
+            int bySpend = Long.compare(paymentCents[b], paymentCents[a]);
+            return bySpend != 0 ? bySpend : Long.compare(keys[b], keys[a]);
+        }
+
+        // The slot of the key, taking a free one for a new key.
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    if (2 * (size + 1) > keys.length) {
+                        grow();
+                        return slot(key);
+                    }
+                    keys[slot] = key;
+                    size++;
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldDepositCents = depositCents;
+            long[] oldDepositCounts = depositCounts;
+            long[] oldPaymentCents = paymentCents;
+            long[] oldPaymentCounts = paymentCounts;
+            allocate(oldKeys.length * 2);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(oldKeys[i]);
+                    depositCents[slot] = oldDepositCents[i];
+                    depositCounts[slot] = oldDepositCounts[i];
+                    paymentCents[slot] = oldPaymentCents[i];
+                    paymentCounts[slot] = oldPaymentCounts[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            depositCents = new long[capacity];
+            depositCounts = new long[capacity];
+            paymentCents = new long[capacity];
+            paymentCounts = new long[capacity];
+        }
+
+        private static int hash(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+}
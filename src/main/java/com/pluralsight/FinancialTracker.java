@@ -1,25 +1,53 @@
 package com.pluralsight;
 
 import java.io.*;
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.time.format.TextStyle;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
 import java.util.Scanner;
 
 public class FinancialTracker {
 
-    private static ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+    // The transactions with their date, vendor and totals indexes, and the file they are written to.
+    // Safe to add to and read from any thread; every query works on a snapshot that never changes under it.
+    private static LedgerService service;
     private static final String FILE_NAME = "transactions.csv";
     private static final File FILE = new File(FILE_NAME);
+    private static final File SNAPSHOT_FILE = new File(FILE_NAME + ".snapshot");
+    // With "tracker.storage" set to "segments" the rows are kept in month files in this directory instead of FILE,
+    // and months older than "tracker.compactAfterMonths" (12 by default) are compressed at startup.
+    private static final boolean SEGMENTS = System.getProperty("tracker.storage", "file").equalsIgnoreCase("segments");
+    private static final File SEGMENTS_DIRECTORY = new File("ledger");
+    private static final int COMPACT_AFTER_MONTHS = Integer.getInteger("tracker.compactAfterMonths", 12);
     private static final String DATE_FORMAT = "yyyy-MM-dd";
     private static final String TIME_FORMAT = "HH:mm:ss";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_FORMAT);
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_FORMAT);
+    // Rows per page of the ledger tables; 0 shows every row at once.
+    private static final int PAGE_SIZE = Integer.getInteger("tracker.pageSize", 100);
+    // Where the metrics are written in the Prometheus text format on exit, if set.
+    private static final String METRICS_FILE = System.getProperty("tracker.metricsFile");
+    // Whether rows that other programs append to the file are added to the ledger while the tracker runs.
+    private static final boolean TAIL = !System.getProperty("tracker.tail", "true").equalsIgnoreCase("false");
+    // Whether startup also estimates what the rows would take as one object each, which walks every row.
+    private static final boolean COMPARE_FOOTPRINT = Boolean.getBoolean("tracker.compareFootprint");
+    private static final Metrics.Operation LOAD = Metrics.operation("load", "Loading the ledger at startup");
+    private static final Metrics.Operation REPORT_DATE = Metrics.operation("report_date", "Date range reports");
+    private static final Metrics.Operation REPORT_VENDOR = Metrics.operation("report_vendor", "Vendor lookups of the vendor report");
+    private static final Metrics.Operation REPORT_MONTHLY = Metrics.operation("report_monthly", "Monthly totals reports");
+    private static final Metrics.Operation RENDER = Metrics.operation("render", "Printing ledger tables, one page at a time");
+    private static final Metrics.Counter ERRORS = Metrics.counter("tracker_errors_total", "Errors shown to the user");
 
     public static void main(String[] args) {
         loadTransactions(FILE_NAME);
+        if (args.length > 0 && args[0].equalsIgnoreCase("serve")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : LedgerServer.DEFAULT_PORT);
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
 
@@ -29,6 +57,9 @@ public class FinancialTracker {
             System.out.println("D) Add Deposit");
             System.out.println("P) Make Payment (Debit)");
             System.out.println("L) Ledger");
+            System.out.println("I) Import Transactions");
+            System.out.println("E) Export Transactions");
+            System.out.println("M) Metrics");
             System.out.println("X) Exit");
 
             System.out.print("Enter: ");
@@ -42,9 +73,25 @@ public class FinancialTracker {
                     addPayment(scanner);
                     break;
                 case "L":
-                    ledgerMenu(scanner);
+                    try {
+                        ledgerMenu(scanner);
+                    } catch (UncheckedIOException e) {
+                        // A month of the ledger could not be read from its segment
+                        printError(e);
+                    }
+                    break;
+                case "I":
+                    importTransactions(scanner);
+                    break;
+                case "E":
+                    exportTransactions(scanner);
+                    break;
+                case "M":
+                    System.out.println();
+                    Metrics.printText(System.out);
                     break;
                 case "X":
+                    shutdown();
                     running = false;
                     break;
                 default:
@@ -57,56 +104,171 @@ public class FinancialTracker {
 
     // This method should load transactions from a file with the given file name.
     // If the file does not exist, it should be created.
-    // The transactions should be stored in the `transactions` ArrayList.
+    // The transactions should be stored in the `ledger`.
     // Each line of the file represents a single transaction in the following format:
     // <date>|<time>|<description>|<vendor>|<amount>
     // For example: 2023-04-15|10:13:25|ergonomic keyboard|Amazon|-89.50
     // After reading all the transactions, the file should be closed.
     // If any errors occur, an appropriate error message should be displayed.
     public static void loadTransactions(String fileName) {
+        if (SEGMENTS) {
+            openSegments(fileName);
+            return;
+        }
         if (FILE.exists()) {
+            Metrics.Timing timing = LOAD.start();
             try {
-                BufferedReader bufferedReader = new BufferedReader(new FileReader(FILE));
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    if (!line.isEmpty())
-                    {
-                        String[] str = line.split("\\|");
-                        transactions.add( new Transaction(
-                                // Day, Month, Year
-                                LocalDate.parse(str[0], DATE_FORMATTER), // Date
-                                LocalTime.parse(str[1], TIME_FORMATTER),// Time
-                                str[2], // Description
-                                str[3], // Vendor
-                                new BigDecimal(str[4]) // Payment / Deposit
-                        ));
-                    }
+                long start = System.nanoTime();
+                TransactionStore transactions = new TransactionStore();
+                long covered = readSnapshot(transactions);
+                if (covered < 0) {
+                    transactions = new TransactionStore(); // The snapshot may have been read in part
+                }
+                int fromSnapshot = transactions.size();
+
+                // Parsed in parallel and already in date and time order, so indexing them needs no searching.
+                // With a snapshot, only the rows appended to the csv after it was saved need parsing.
+                TransactionLoader loader = new TransactionLoader(FILE);
+                loader.load(transactions, Math.max(covered, 0));
+                service = new LedgerService(new Ledger(transactions), FILE);
+
+                if (loader.getMalformedRows() > 0) {
+                    System.out.println("Error: skipped " + loader.getMalformedRows() + " malformed rows in " + fileName
+                            + ", the first of them: " + loader.getFirstMalformedRow());
+                }
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                if (covered < 0) {
+                    System.out.printf("Loaded %d transactions in %d ms (%.0f rows/sec)%n",
+                            loader.getRowsLoaded(), elapsedMillis, loader.getRowsPerSecond());
+                } else {
+                    System.out.printf("Loaded %d transactions from %s and %d from %s in %d ms%n",
+                            fromSnapshot, SNAPSHOT_FILE.getName(), loader.getRowsLoaded(), fileName, elapsedMillis);
+                }
+                if (COMPARE_FOOTPRINT) {
+                    System.out.printf("Ledger memory: %d KB in columns (about %d KB as one object per row)%n",
+                            transactions.estimatedBytes() / 1024, transactions.estimatedObjectBytes() / 1024);
+                } else {
+                    System.out.printf("Ledger memory: %d KB in columns%n", transactions.estimatedBytes() / 1024);
+                }
+
+                long endOffset = loader.getEndOffset();
+                if (loader.getTornLineOffset() >= 0) {
+                    // The last write before the program stopped never finished, so cut off what it left behind
+                    TransactionWriter.discardTornTail(FILE, loader.getTornLineOffset());
+                    endOffset = loader.getTornLineOffset();
+                    System.out.println("Discarded a partially written last line of " + fileName + ", which did not parse: "
+                            + loader.getTornLine());
+                } else if (loader.getUnterminatedLineOffset() >= 0) {
+                    // Left as it is: the next write ends the line before adding its own
+                    System.out.println("The last line of " + fileName + " has no newline; it was loaded as a transaction");
                 }
-                bufferedReader.close();
 
-                // Sort by Date
-                transactions.sort(Comparator.comparing(Transaction::getDate).reversed());
+                if (covered < 0 || loader.getRowsLoaded() > 0) {
+                    saveSnapshot(endOffset);
+                }
+                follow(endOffset);
+                timing.stop(transactions.size());
             } catch (Exception e) {
-                System.out.println("Error: " + e);
+                printError(e);
+                if (service == null) {
+                    service = new LedgerService(new Ledger(), FILE);
+                }
             }
         } else {
             System.out.println("\nError: " + fileName + " does not exist; creating a new file now.\n");
+            service = new LedgerService(new Ledger(), FILE);
             try {
                 BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(FILE));
                 bufferedWriter.write("");
                 System.out.println("File created successfully");
                 bufferedWriter.close();
+                follow(0);
             } catch (Exception e) {
-                System.out.println("Error: " + e);
+                printError(e);
             }
         }
     }
 
+    // Custom Method
+    // Opens the month segments, splitting the transactions file into them the first time. Only the manifest is read
+    // here; the months are loaded as the menus need them.
+    private static void openSegments(String fileName) {
+        Metrics.Timing timing = LOAD.start();
+        try {
+            if (!new File(SEGMENTS_DIRECTORY, LedgerSegments.MANIFEST).exists() && FILE.exists()) {
+                long rows = LedgerSegments.split(FILE, SEGMENTS_DIRECTORY);
+                System.out.println("Split " + rows + " transactions of " + fileName + " into month segments in "
+                        + SEGMENTS_DIRECTORY + File.separator + " (" + fileName + " is no longer written to)");
+            }
+            LedgerSegments segments = LedgerSegments.open(SEGMENTS_DIRECTORY, new Ledger());
+            service = new LedgerService(segments);
+            int compacted = segments.compact(YearMonth.now().minusMonths(COMPACT_AFTER_MONTHS));
+            if (compacted > 0) {
+                System.out.println("Compressed the segments of " + compacted + " older months");
+            }
+            System.out.println("Ledger: " + segments.getRowCount() + " transactions in " + segments.getMonthCount()
+                    + " month segments, loaded as they are needed");
+            timing.stop(0);
+        } catch (Exception e) {
+            printError(e);
+            service = new LedgerService(new Ledger(), FILE);
+        }
+    }
+
+    // Custom Method
+    // Fills the ledger from the binary snapshot and returns how many bytes of the csv it covers,
+    // or -1 if the snapshot can't be used and the csv has to be loaded in full.
+    private static long readSnapshot(TransactionStore transactions) {
+        try {
+            long covered = TransactionSnapshot.read(SNAPSHOT_FILE, FILE, transactions);
+            if (covered < 0 && SNAPSHOT_FILE.exists()) {
+                System.out.println(SNAPSHOT_FILE.getName() + " is out of date or corrupt, loading " + FILE_NAME + " instead");
+            }
+            return covered;
+        } catch (Exception e) {
+            System.out.println("Error: " + SNAPSHOT_FILE.getName() + " could not be read, loading " + FILE_NAME + " instead (" + e + ")");
+            return -1;
+        }
+    }
+
+    // Custom Method
+    // Adds the rows other programs append to the file from `offset` on, unless "tracker.tail" is false.
+    private static void follow(long offset) {
+        if (!TAIL) {
+            return;
+        }
+        try {
+            service.follow(offset);
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
+
+    // Custom Method
+    // No snapshot is saved once the file was truncated or replaced under the tracker, and the old one is removed:
+    // the ledger still has the old rows, so the next start has to load the file as it is now.
+    private static void saveSnapshot(long csvLength) {
+        if (service.wasFileReset()) {
+            if (SNAPSHOT_FILE.delete()) {
+                System.out.println(FILE_NAME + " was replaced while it was open, so " + SNAPSHOT_FILE.getName()
+                        + " was removed");
+            }
+            return;
+        }
+        try {
+            Ledger.Snapshot snapshot = service.snapshot();
+            TransactionSnapshot.write(SNAPSHOT_FILE, FILE, snapshot.getRows(), snapshot.getIndex(), csvLength);
+            service.markSaved();
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
+
     // This method should prompt the user to enter the date, time, description, vendor, and amount of a deposit.
     // The user should enter the date and time in the following format: yyyy-MM-dd HH:mm:ss
     // The amount should be a positive number.
     // After validating the input, a new `Transaction` object should be created with the entered values.
-    // The new deposit should be added to the `transactions` ArrayList.
+    // The new deposit should be added to the `ledger`.
     private static void addDeposit(Scanner scanner) {
         promptTransaction(scanner, false);
     }
@@ -115,7 +277,7 @@ public class FinancialTracker {
     // The user should enter the date and time in the following format: yyyy-MM-dd HH:mm:ss
     // The amount received should be a positive number then transformed to a negative number.
     // After validating the input, a new `Transaction` object should be created with the entered values.
-    // The new payment should be added to the `transactions` ArrayList.
+    // The new payment should be added to the `ledger`.
     private static void addPayment(Scanner scanner) {
         promptTransaction(scanner, true);
     }
@@ -137,43 +299,120 @@ public class FinancialTracker {
             String vendor = scanner.nextLine().trim();
 
             System.out.print("Enter the amount of the " + s + " : ");
-            BigDecimal payment = scanner.nextBigDecimal();
+            Money payment = Money.parse(scanner.nextLine());
 
-            if (isPayment) { // If this is a payment, make sure the value remains negative.
-                if (payment.signum() > 0)
-                {
-                    payment = payment.negate();
-                }
-            } else { // If this is a deposit, make sure the value remains positive.
-                if (payment.signum() < 0) {
-                    payment = payment.abs();
-                }
+            // The service makes a payment negative and a deposit positive, whatever sign was entered.
+            if (isPayment) {
+                service.addPayment(date, time, description, vendor, payment);
+            } else {
+                service.addDeposit(date, time, description, vendor, payment);
+            }
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
+
+    // Custom Method
+    // Prompts for a file in the same format as `FILE` and adds every transaction in it that the ledger doesn't have yet.
+    private static void importTransactions(Scanner scanner) {
+        try {
+            System.out.print("Enter the file to import: ");
+            File file = new File(scanner.nextLine().trim());
+            if (!file.exists()) {
+                System.out.println("Error: " + file + " does not exist");
+                return;
+            }
+            System.out.print("Are these D) Deposits, P) Payments, or A) As signed in the file? ");
+            TransactionImporter.Sign sign;
+            switch (scanner.nextLine().trim().toUpperCase()) {
+                case "D":
+                    sign = TransactionImporter.Sign.DEPOSITS;
+                    break;
+                case "P":
+                    sign = TransactionImporter.Sign.PAYMENTS;
+                    break;
+                case "A":
+                    sign = TransactionImporter.Sign.AS_IS;
+                    break;
+                default:
+                    System.out.println("Invalid option");
+                    return;
             }
 
-            scanner.nextLine();
+            TransactionImporter importer = service.importFile(file, sign);
+            System.out.printf("Imported %d of %d rows in %d ms (%.0f rows/sec); rejected %d (%d malformed, %d duplicates)%n",
+                    importer.getRowsImported(), importer.getRowsRead(), importer.getElapsedMillis(),
+                    importer.getRowsPerSecond(), importer.getRejectedRows(), importer.getMalformedRows(),
+                    importer.getDuplicateRows());
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
 
-            Transaction transaction = new Transaction(date, time, description, vendor, payment);
-            writeTransaction(transaction);
+    // Custom Method
+    // Prompts for a file and a date range (blank for no limit) and writes the transactions in that range to the file.
+    private static void exportTransactions(Scanner scanner) {
+        try {
+            System.out.print("Enter the file to export to: ");
+            File file = new File(scanner.nextLine().trim());
+            System.out.print("Enter the start date in the format \"yyyy-MM-dd\" (blank for the first): ");
+            String startDate = scanner.nextLine().trim();
+            System.out.print("Enter the end date in the format \"yyyy-MM-dd\" (blank for the last): ");
+            String endDate = scanner.nextLine().trim();
+            int fromDay = startDate.isEmpty() ? Integer.MIN_VALUE : (int) LocalDate.parse(startDate, DATE_FORMATTER).toEpochDay();
+            int toDay = endDate.isEmpty() ? Integer.MAX_VALUE : (int) LocalDate.parse(endDate, DATE_FORMATTER).toEpochDay();
+
+            TransactionExporter exporter = service.exportFile(file, fromDay, toDay);
+            System.out.printf("Exported %d rows to %s in %d ms (%.0f rows/sec)%n",
+                    exporter.getRowsWritten(), file, exporter.getElapsedMillis(), exporter.getRowsPerSecond());
         } catch (Exception e) {
-            System.out.println("Error: " + e);
+            printError(e);
         }
     }
 
     // Custom Method
-    private static void writeTransaction(Transaction transaction) {
-        // Adding to list of transactions
-        transactions.add(transaction);
-        transactions.sort(Comparator.comparing(Transaction::getDate).reversed());
+    // Runs the HTTP API without the menus until the process is stopped.
+    private static void serve(int port) {
+        try {
+            LedgerServer server = LedgerServer.start(service, port);
+            System.out.println("Serving the ledger API on http://localhost:" + server.getPort() + "/ (stop with Ctrl+C)");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                shutdown();
+            }));
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
 
-        // Writing to csv file
+    // Custom Method
+    // Closes the transactions file and saves a snapshot if anything was written since the last one.
+    private static void shutdown() {
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(FILE, true));
-            bufferedWriter.newLine();
-            bufferedWriter.write(transaction.toString());
-            bufferedWriter.close();
+            service.close();
         } catch (Exception e) {
-            System.out.println("Error: " + e);
+            printError(e);
         }
+        if (!SEGMENTS && service.hasUnsavedRows()) {
+            saveSnapshot(service.getFileOffset());
+        }
+        if (METRICS_FILE != null) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(METRICS_FILE), StandardCharsets.UTF_8)) {
+                Metrics.writePrometheus(out);
+            } catch (Exception e) {
+                printError(e);
+            }
+        }
+    }
+
+    // Custom Method
+    // Shows the error and counts it; input that didn't parse is counted as an input error too.
+    private static void printError(Exception e) {
+        ERRORS.increment();
+        if (e instanceof DateTimeException || e instanceof NumberFormatException) {
+            LedgerService.INPUT_ERRORS.increment();
+        }
+        System.out.println("Error: " + e);
     }
 
     private static void ledgerMenu(Scanner scanner) {
@@ -193,13 +432,13 @@ public class FinancialTracker {
 
             switch (input.toUpperCase()) {
                 case "A":
-                    displayLedger();
+                    displayLedger(scanner);
                     break;
                 case "D":
-                    displayDeposits();
+                    displayDeposits(scanner);
                     break;
                 case "P":
-                    displayPayments();
+                    displayPayments(scanner);
                     break;
                 case "R":
                     reportsMenu(scanner);
@@ -215,42 +454,24 @@ public class FinancialTracker {
         }
     }
 
-    // This method should display a table of all transactions in the `transactions` ArrayList.
+    // This method should display a table of all transactions in the `ledger`.
     // The table should have columns for date, time, description, vendor, and amount.
-    private static void displayLedger() {
+    private static void displayLedger(Scanner scanner) {
         System.out.println();
 
-        printTableHead("Transaction Ledger");
-
-        for (int i = 0; i < transactions.size(); i++) {
-            Transaction transaction = transactions.get(i);
-            if (printTransactionsTable(i, transaction)) break;
-        }
+        printTable(scanner, "Transaction Ledger", service.all());
     }
 
-    // This method should display a table of all deposits in the `transactions` ArrayList.
+    // This method should display a table of all deposits in the `ledger`.
     // The table should have columns for date, time, description, vendor, and amount.
-    private static void displayDeposits() {
-        printTableHead("Transaction Deposits");
-
-        for (int i = 0; i < transactions.size(); i++) {
-            Transaction transaction = transactions.get(i);
-            if (!transaction.isPayment) {
-                if (printTransactionsTable(i, transaction)) break;
-            }
-        }
+    private static void displayDeposits(Scanner scanner) {
+        printTable(scanner, "Transaction Deposits", service.deposits());
     }
 
-    // This method should display a table of all payments in the `transactions` ArrayList.
+    // This method should display a table of all payments in the `ledger`.
     // The table should have columns for date, time, description, vendor, and amount.
-    private static void displayPayments() {
-        printTableHead("Transaction Payments");
-        for (int i = 0; i < transactions.size(); i++) {
-            Transaction transaction = transactions.get(i);
-            if (transaction.isPayment) {
-                if (printTransactionsTable(i, transaction)) break;
-            }
-        }
+    private static void displayPayments(Scanner scanner) {
+        printTable(scanner, "Transaction Payments", service.payments());
     }
 
     // Reports
@@ -264,6 +485,14 @@ public class FinancialTracker {
             System.out.println("3) Year To Date");
             System.out.println("4) Previous Year");
             System.out.println("5) Search by Vendor");
+            System.out.println("6) Custom Date Range");
+            System.out.println("7) Monthly Totals");
+            System.out.println("8) Balance as of Date");
+            System.out.println("9) Search Descriptions");
+            System.out.println("10) Spending by Vendor and Month");
+            System.out.println("11) Top Vendors");
+            System.out.println("12) Weekly Deposits and Payments");
+            System.out.println("13) Monthly Moving Averages");
             System.out.println("0) Back");
 
             System.out.print("Enter: ");
@@ -311,11 +540,124 @@ public class FinancialTracker {
                 case "5":
                     System.out.println();
                     System.out.print("Enter a vendor: ");
-                    filterTransactionsByVendor(scanner.nextLine().trim());
+                    filterTransactionsByVendor(scanner, scanner.nextLine().trim());
                     break;
 
+                // Prompt the user to enter a start and end date, then generate a report for all transactions
+                // between those dates (both included).
                 case "6":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter the start date in the format \"yyyy-MM-dd\": ");
+                        LocalDate startDate = LocalDate.parse(scanner.nextLine().trim(), DATE_FORMATTER);
+                        System.out.print("Enter the end date in the format \"yyyy-MM-dd\": ");
+                        LocalDate endDate = LocalDate.parse(scanner.nextLine().trim(), DATE_FORMATTER);
+                        filterTransactionsByDate(startDate, endDate);
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+
+                // Prompt the user to enter a year, then print the deposit and payment totals of each month
+                // of that year along with the balance at the end of the month.
+                case "7":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter the year: ");
+                        printMonthlyTotals(Year.parse(scanner.nextLine().trim()));
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
 
+                // Prompt the user to enter a date, then print the balance of all transactions up to and including it.
+                case "8":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter the date in the format \"yyyy-MM-dd\": ");
+                        LocalDate date = LocalDate.parse(scanner.nextLine().trim(), DATE_FORMATTER);
+                        Rollups.Totals totals = service.balanceAsOf(date);
+                        System.out.println("Balance as of " + date + ": " + totals.getNet()
+                                + " (" + totals.getCount() + " transactions)");
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+                // Prompt the user to enter words to search the descriptions and vendors for, and optionally
+                // a date range, then generate a report for all matching transactions.
+                case "9":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter words to search for (\"quoted words\" as a phrase, OR between alternatives): ");
+                        String query = scanner.nextLine().trim();
+                        System.out.print("Enter the start date in the format \"yyyy-MM-dd\", or leave blank for all dates: ");
+                        String start = scanner.nextLine().trim();
+                        if (start.isEmpty()) {
+                            searchTransactions(scanner, query, null, null);
+                        } else {
+                            LocalDate startDate = LocalDate.parse(start, DATE_FORMATTER);
+                            System.out.print("Enter the end date in the format \"yyyy-MM-dd\": ");
+                            LocalDate endDate = LocalDate.parse(scanner.nextLine().trim(), DATE_FORMATTER);
+                            searchTransactions(scanner, query, startDate, endDate);
+                        }
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+                // Prompt the user to enter a year, then print how much was spent with each of the year's top vendors
+                // in each month of it.
+                case "10":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter the year: ");
+                        Year year = Year.parse(scanner.nextLine().trim());
+                        System.out.print("Enter how many vendors to show, or leave blank for 10: ");
+                        String count = scanner.nextLine().trim();
+                        printVendorMonths(year, count.isEmpty() ? 10 : Integer.parseInt(count));
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+
+                // Prompt the user to enter how many vendors to show and optionally a year, then print the vendors
+                // with the most spent, in the year or over the whole history.
+                case "11":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter how many vendors to show, or leave blank for 10: ");
+                        String count = scanner.nextLine().trim();
+                        System.out.print("Enter the year, or leave blank for all years: ");
+                        String year = scanner.nextLine().trim();
+                        printTopVendors(count.isEmpty() ? 10 : Integer.parseInt(count),
+                                year.isEmpty() ? null : Year.parse(year));
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+
+                // Prompt the user to enter a year, then print the deposits and payments of each week of it
+                // and how the deposits compare to the payments.
+                case "12":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter the year: ");
+                        printWeeklyTotals(Year.parse(scanner.nextLine().trim()));
+                    } catch (Exception e) {
+                        printError(e);
+                    }
+                    break;
+
+                // Prompt the user to enter a number of months, then print the deposits and payments of every month
+                // along with their averages over that many months.
+                case "13":
+                    System.out.println();
+                    try {
+                        System.out.print("Enter how many months to average over, or leave blank for 3: ");
+                        String months = scanner.nextLine().trim();
+                        printMovingAverages(months.isEmpty() ? 3 : Integer.parseInt(months));
+                    } catch (Exception e) {
+                        printError(e);
+                    }
                     break;
                 case "0":
                     running = false;
@@ -328,120 +670,247 @@ public class FinancialTracker {
     }
 
     // This method filters the transactions by date and prints a report to the console.
-    // It takes two parameters: startDate and endDate, which represent the range of dates to filter by.
-    // The method loops through the transactions list and checks each transaction's date against the date range.
+    // It takes two parameters: startDate and endDate, which represent the range of dates to filter by (both included).
+    // The method looks up the date range in the ledger index, so only the transactions inside the range are visited.
+    // Asking for the same range again is answered from the report cache while no transaction in it was added.
     // Transactions that fall within the date range are printed to the console.
     // If no transactions fall within the date range, the method prints a message indicating that there are no results.
     private static void filterTransactionsByDate(LocalDate startDate, LocalDate endDate) {
+        Metrics.Timing timing = REPORT_DATE.start();
+        long count = 0;
         boolean isEmpty = true; // Checks if there are no transactions in the loop.
-        for (Transaction transaction : transactions) {
-            if (transaction.getDate().minusDays(1).isAfter(startDate) &&
-                    transaction.getDate().plusDays(1).isBefore(endDate)) {
-                System.out.println(transaction);
-                isEmpty = false;
-            }
+        LedgerService.View transactions = service.between(startDate, endDate);
+        PrimitiveIterator.OfInt rows = transactions.iterator();
+        while (rows.hasNext()) {
+            System.out.println(transactions.getRows().get(rows.nextInt()));
+            isEmpty = false;
+            count++;
         }
 
         if (isEmpty) {
             System.out.println("There are no results.");
+        } else {
+            System.out.println(transactions.getTotals());
+        }
+        timing.stop(count);
+    }
+
+    // Custom Method
+    // Prints the totals of every month of the year, each answered by the rollups without visiting any rows.
+    // The balances start from the balance before the year, so only the year itself has to be in the ledger.
+    private static void printMonthlyTotals(Year year) {
+        Metrics.Timing timing = REPORT_MONTHLY.start();
+        LocalDate firstDay = year.atDay(1);
+        LocalDate lastDay = year.atMonth(Month.DECEMBER).atEndOfMonth();
+        Money opening = service.balanceAsOf(firstDay.minusDays(1)).getNet();
+        Ledger.Snapshot rollups = service.snapshot(firstDay, lastDay); // Every total below is taken over the same rows
+        System.out.println("Totals for " + year);
+        for (Month month : Month.values()) {
+            YearMonth yearMonth = year.atMonth(month);
+            int endDay = (int) yearMonth.atEndOfMonth().toEpochDay();
+            Rollups.Totals totals = rollups.between((int) yearMonth.atDay(1).toEpochDay(), endDay);
+            System.out.printf("%-10s %s | Balance: %s%n", month, totals,
+                    opening.plus(rollups.between((int) firstDay.toEpochDay(), endDay).getNet()));
+        }
+        System.out.println("Year       " + rollups.between((int) firstDay.toEpochDay(), (int) lastDay.toEpochDay()));
+        timing.stop(0);
+    }
+
+    // Custom Method
+    // Prints what was spent with each of the year's top vendors in every month of the year. The spending of every
+    // vendor and month comes from one parallel pass over the ledger (see Analytics).
+    private static void printVendorMonths(Year year, int count) {
+        Analytics analytics = service.analytics();
+        Analytics.Groups vendorMonths = analytics.groupBy(analytics.byVendorAndMonth(),
+                (int) year.atDay(1).toEpochDay(), (int) year.atMonth(Month.DECEMBER).atEndOfMonth().toEpochDay());
+        Analytics.Groups vendors = vendorMonths.rollUp(Analytics::vendorOfKey);
+        long[] top = vendors.topByPayments(count);
+        if (top.length == 0) {
+            System.out.println("There are no results.");
+            return;
+        }
+        int january = Analytics.monthOf(year.atMonth(Month.JANUARY));
+        System.out.println("Spending by vendor and month in " + year);
+        System.out.printf("%-24s", "Vendor");
+        for (Month month : Month.values()) {
+            System.out.printf(" %10s", month.getDisplayName(TextStyle.SHORT, Locale.ROOT));
+        }
+        System.out.printf(" %12s%n", "Year");
+        for (long vendor : top) {
+            String name = analytics.getVendorName((int) vendor);
+            System.out.printf("%-24s", name.length() > 24 ? name.substring(0, 23) + "…" : name);
+            for (int month = 0; month < 12; month++) {
+                System.out.printf(" %10s", vendorMonths.getOrEmpty(vendor << 32 | (january + month)).getPayments().negate());
+            }
+            System.out.printf(" %12s%n", vendors.get(vendor).getPayments().negate());
+        }
+    }
+
+    // Custom Method
+    // Prints the vendors with the most spent, with their share of all the spending, in the year or over the whole
+    // history if year is null.
+    private static void printTopVendors(int count, Year year) {
+        Analytics analytics = service.analytics();
+        Analytics.Groups vendors = year == null
+                ? analytics.groupBy(analytics.byVendor(), Integer.MIN_VALUE, Integer.MAX_VALUE)
+                : analytics.groupBy(analytics.byVendor(), (int) year.atDay(1).toEpochDay(),
+                        (int) year.atMonth(Month.DECEMBER).atEndOfMonth().toEpochDay());
+        long[] top = vendors.topByPayments(count);
+        if (top.length == 0) {
+            System.out.println("There are no results.");
+            return;
+        }
+        long allPayments = vendors.total().getPaymentCents();
+        System.out.println("Top vendors " + (year == null ? "of all time" : "in " + year));
+        System.out.printf("%4s  %-30s %14s %9s %7s %14s%n", "#", "Vendor", "Spent", "Payments", "Share", "Deposits");
+        for (int i = 0; i < top.length; i++) {
+            Rollups.Totals totals = vendors.get(top[i]);
+            System.out.printf("%4d  %-30s %14s %9d %6.2f%% %14s%n", i + 1, analytics.getVendorName((int) top[i]),
+                    totals.getPayments().negate(), totals.getPaymentCount(),
+                    100.0 * totals.getPaymentCents() / allPayments, totals.getDeposits());
+        }
+    }
+
+    // Custom Method
+    // Prints the deposits and payments of every week of the year, Monday to Sunday, and the deposits as a multiple
+    // of the payments. The first and last weeks only count the days inside the year; the first is shown from January 1.
+    private static void printWeeklyTotals(Year year) {
+        int firstDay = (int) year.atDay(1).toEpochDay();
+        int lastDay = (int) year.atMonth(Month.DECEMBER).atEndOfMonth().toEpochDay();
+        Analytics.Groups weeks = service.analytics().groupBy(Analytics.byWeek(), firstDay, lastDay);
+        System.out.println("Weekly totals for " + year);
+        for (int week = Analytics.weekOf(firstDay); week <= Analytics.weekOf(lastDay); week++) {
+            Rollups.Totals totals = weeks.getOrEmpty(week);
+            String ratio = totals.getPaymentCents() == 0 ? "n/a"
+                    : String.format("%.2f", (double) totals.getDepositCents() / -totals.getPaymentCents());
+            LocalDate start = Analytics.mondayOf(week);
+            System.out.println("Week of " + (start.isBefore(year.atDay(1)) ? year.atDay(1) : start) + "  " + totals
+                    + " | Deposits/Payments: " + ratio);
+        }
+    }
+
+    // Custom Method
+    // Prints the deposits and payments of every month from the first transaction to the last, each with its average
+    // over the last `window` months (over the months so far for the first ones).
+    private static void printMovingAverages(int window) {
+        Analytics.Groups months = service.analytics().groupBy(Analytics.byMonth(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+        long[] keys = months.keys();
+        if (keys.length == 0) {
+            System.out.println("There are no results.");
+            return;
+        }
+        int firstMonth = (int) keys[0];
+        long[] deposits = new long[(int) keys[keys.length - 1] - firstMonth + 1];
+        long[] payments = new long[deposits.length];
+        for (int i = 0; i < deposits.length; i++) {
+            Rollups.Totals totals = months.getOrEmpty(firstMonth + i);
+            deposits[i] = totals.getDepositCents();
+            payments[i] = totals.getPaymentCents();
+        }
+        long[] averageDeposits = Analytics.movingAverage(deposits, window);
+        long[] averagePayments = Analytics.movingAverage(payments, window);
+        System.out.printf("%-8s %14s %14s %18s %18s%n", "Month", "Deposits", "Payments",
+                window + "-month deposits", window + "-month payments");
+        for (int i = 0; i < deposits.length; i++) {
+            System.out.printf("%-8s %14s %14s %18s %18s%n", Analytics.yearMonth(firstMonth + i),
+                    Money.ofCents(deposits[i]), Money.ofCents(payments[i]),
+                    Money.ofCents(averageDeposits[i]), Money.ofCents(averagePayments[i]));
         }
     }
 
     // This method filters the transactions by vendor and prints a report to the console.
     // It takes one parameter: vendor, which represents the name of the vendor to filter by.
-    // The method loops through the transactions list and checks each transaction's vendor name against the specified vendor name.
+    // The method looks the vendor name up in the vendor index, ignoring case, or in the report cache if it was just asked for.
     // Transactions with a matching vendor name are printed to the console.
-    // If no transactions match the specified vendor name, the method prints a message indicating that there are no results.
-    private static void filterTransactionsByVendor(String vendor) {
-        printTableHead("Transactions Organized by Vendor");
-
-        for (int i = 0; i < transactions.size(); i++) {
-            Transaction transaction = transactions.get(i);
-            if (vendor.equalsIgnoreCase(transaction.getVendor())) {
-                if (printTransactionsTable(i, transaction)) break;
-            }
+    // If there is no exact match, vendors starting with the name or spelled similarly to it are shown instead.
+    // If nothing matches at all, the method prints a message indicating that there are no results.
+    private static void filterTransactionsByVendor(Scanner scanner, String vendor) {
+        Metrics.Timing timing = REPORT_VENDOR.start();
+        LedgerService.View transactions = service.byVendor(vendor);
+        List<String> vendorNames = transactions.getVendors();
+        timing.stop(0);
+        if (vendorNames.isEmpty()) {
+            System.out.println("There are no results.");
+            return;
+        }
+        if (!vendorNames.equals(List.of(vendor))) {
+            // No vendor by that exact name, so the service tried vendors starting with it and then vendors spelled similarly
+            System.out.println("No vendor named \"" + vendor + "\", showing: " + String.join(", ", vendorNames));
         }
+
+        printTable(scanner, "Transactions Organized by Vendor", transactions);
+        System.out.println(transactions.getTotals());
+    }
+
+    // Custom Method
+    // Searches the words of the descriptions and vendors, ignoring case, and prints the matching transactions
+    // and their totals. The words are looked up in the search index, so no transactions are scanned;
+    // startDate and endDate (both included) narrow the search to a date range unless they are null.
+    private static void searchTransactions(Scanner scanner, String query, LocalDate startDate, LocalDate endDate) {
+        LedgerService.View transactions = startDate == null
+                ? service.search(query)
+                : service.search(query, startDate, endDate);
+        if (transactions.isEmpty()) {
+            System.out.println("There are no results.");
+            return;
+        }
+        printTable(scanner, "Transactions Matching " + query, transactions);
+        System.out.println(transactions.getTotals());
     }
 
     // Table Construction Methods
-    private static void printTableLine(int isTop) {
-        switch (isTop) {
-            case 0 -> { // Top
-                System.out.print("┌");
-                for (int i = 0; i < 204; i++) {
-                    System.out.print("─");
-                }
-                System.out.println("┐");
+    // Shows the rows of the view, in its order, as tables of PAGE_SIZE rows.
+    // After each page the user can go on to the next page, jump to a row number, or stop,
+    // so even a huge ledger is never rendered all at once.
+    private static void printTable(Scanner scanner, String title, LedgerService.View view) {
+        TableRenderer table = new TableRenderer(System.out);
+        TransactionStore rows = view.getRows();
+        PrimitiveIterator.OfInt cursor = view.iterator();
+        int next = nextRow(cursor);
+        long position = 0; // Rows of the view shown or skipped so far.
+        while (true) {
+            Metrics.Timing timing = RENDER.start();
+            long rendered = table.getRowsRendered();
+            table.head(position == 0 ? title : title + " (from row " + (position + 1) + ")");
+            long pageEnd = PAGE_SIZE > 0 ? position + PAGE_SIZE : Long.MAX_VALUE;
+            while (next >= 0 && position < pageEnd) {
+                table.row(rows, next);
+                position++;
+                next = nextRow(cursor);
             }
-            case 1 -> { // Middle-Top
-                System.out.print("├");
-                for (int i = 0; i < 204; i++) {
-                    if ((i+1) % 41 == 0) {
-                        System.out.print("┬");
-                    }
-                    else {
-                        System.out.print("─");
-                    }
-                }
-                System.out.println("┤");
+            table.flush();
+            timing.stop(table.getRowsRendered() - rendered);
+            if (next < 0) {
+                break;
             }
-            case 2 -> { // Middle Surrounded
-                System.out.print("├");
-                for (int i = 0; i < 204; i++) {
-                    if ((i+1) % 41 == 0) {
-                        System.out.print("┼");
-                    }
-                    else {
-                        System.out.print("─");
-                    }
-                }
-                System.out.println("┤");
+
+            System.out.print("Showing up to row " + position + ". Press Enter for the next page, enter a row number to jump to, or Q to stop: ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("Q")) {
+                break;
             }
-            case 3 -> { // Bottom
-                System.out.print("└");
-                for (int i = 0; i < 204; i++) {
-                    if ((i+1) % 41 == 0) {
-                        System.out.print("┴");
+            if (!input.isEmpty()) {
+                try {
+                    long target = Math.max(Long.parseLong(input), 1);
+                    cursor = view.iterator();
+                    next = nextRow(cursor);
+                    for (position = 0; position < target - 1 && next >= 0; position++) {
+                        next = nextRow(cursor);
                     }
-                    else {
-                        System.out.print("─");
+                    if (next < 0) {
+                        System.out.println("There are only " + position + " rows.");
+                        break;
                     }
+                } catch (NumberFormatException e) {
+                    printError(e);
                 }
-                System.out.println("┘");
             }
         }
+        System.out.printf("Rendered %d rows in %d ms (%.0f rows/sec)%n",
+                table.getRowsRendered(), table.getElapsedMillis(), table.getRowsPerSecond());
     }
 
-    private static String centerText(String text, int width) {
-        String out = String.format("%"+width+"s%s%"+width+"s", "",text,"");
-        float mid = (out.length()/2);
-        float start = mid - (width/2);
-        float end = start + width;
-        return out.substring((int)start, (int)end);
-    }
-
-    private static void printTableHead(String title) {
-        printTableLine(0);
-        System.out.println("│"+ centerText(title, 204) + "│");
-        printTableLine(1);
-        System.out.println("│"+ centerText("DATE", 40) + "│" + centerText("TIME", 40) + "│"
-                + centerText("DESCRIPTION", 40) + "│" + centerText("VENDOR", 40)
-                + "│" + centerText("AMOUNT", 40) + "│");
-        printTableLine(2);
-    }
-
-    private static boolean printTransactionsTable(int i, Transaction transaction) {
-        System.out.print("│");
-        System.out.print(centerText(transaction.getDate().toString(), 40) + "│");
-        System.out.print(centerText(transaction.getTime().format(TIME_FORMATTER), 40) + "│");
-        System.out.print(centerText(transaction.getDescription(), 40) + "│");
-        System.out.print(centerText(transaction.getVendor(), 40) + "│");
-        System.out.println(centerText(transaction.getAmount().toString(), 40) + "│");
-        if (i == transactions.size()-1) {
-            printTableLine(3);
-            return true;
-        }
-        printTableLine(2);
-        return false;
+    private static int nextRow(PrimitiveIterator.OfInt cursor) {
+        return cursor.hasNext() ? cursor.nextInt() : -1;
     }
 }
\ No newline at end of file
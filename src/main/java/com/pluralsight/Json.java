@@ -0,0 +1,191 @@
+package com.pluralsight;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The little JSON the HTTP API needs, written by hand so the tracker keeps running on the JDK alone.
+// Output is appended to a reused StringBuilder; amounts are written as numbers with their exact decimals.
+// Input is limited to one flat object of strings, numbers, booleans and nulls, like a new transaction.
+class Json {
+    private Json() {
+    }
+
+    // {"date":"2023-04-15","time":"10:13:25","description":"...","vendor":"...","amount":-89.50}
+    static void appendTransaction(StringBuilder out, TransactionStore rows, int row) {
+        out.append("{\"date\":\"");
+        TableRenderer.appendDate(out, rows.getEpochDay(row));
+        out.append("\",\"time\":\"");
+        TableRenderer.appendTime(out, rows.getSecondOfDay(row));
+        out.append("\",\"description\":");
+        appendString(out, rows.getDescription(row));
+        out.append(",\"vendor\":");
+        appendString(out, rows.getVendor(row));
+        out.append(",\"amount\":");
+        Money.appendTo(out, rows.getCents(row), rows.getScale(row));
+        out.append('}');
+    }
+
+    static void appendTotals(StringBuilder out, Rollups.Totals totals) {
+        out.append("{\"deposits\":");
+        Money.appendTo(out, totals.getDepositCents(), 2);
+        out.append(",\"depositCount\":").append(totals.getDepositCount());
+        out.append(",\"payments\":");
+        Money.appendTo(out, totals.getPaymentCents(), 2);
+        out.append(",\"paymentCount\":").append(totals.getPaymentCount());
+        out.append(",\"net\":");
+        Money.appendTo(out, totals.getNetCents(), 2);
+        out.append('}');
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00");
+                        out.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // Reads a flat object into its fields. Strings are unescaped, null becomes null, and numbers and booleans keep
+    // their text, so an amount can be parsed exactly by Money. Throws IllegalArgumentException for anything else.
+    static Map<String, String> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, String> fields = new LinkedHashMap<>();
+        parser.expect('{');
+        if (!parser.skip('}')) {
+            do {
+                String name = parser.string();
+                parser.expect(':');
+                fields.put(name, parser.value());
+            } while (parser.skip(','));
+            parser.expect('}');
+        }
+        parser.end();
+        return fields;
+    }
+
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        // Skips whitespace, then the character if it is next.
+        boolean skip(char c) {
+            whitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!skip(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at offset " + position);
+            }
+        }
+
+        void end() {
+            whitespace();
+            if (position != text.length()) {
+                throw new IllegalArgumentException("Unexpected text at offset " + position);
+            }
+        }
+
+        String value() {
+            whitespace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && "{}[],:\" \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected a value at offset " + position);
+            }
+            String value = text.substring(start, position);
+            return value.equals("null") ? null : value;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Bad escape at offset " + position);
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped); // \" \\ and \/
+                }
+            }
+        }
+
+        private void whitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
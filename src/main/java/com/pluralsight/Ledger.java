@@ -0,0 +1,240 @@
+package com.pluralsight;
+
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The transactions together with their indexes and rollups, safe to use from many threads at once.
+//
+// Readers call `snapshot()` and get an immutable, consistent view of the ledger as of the last completed write.
+// Taking a snapshot is a single volatile read, and reading one never waits for writers: the store and the index
+// share their arrays with the snapshot copy-on-write, while the vendor and search indexes and the rollups are
+// shared and answer for the snapshot's row count (its version).
+//
+// Writers use flat combining: each one queues its transaction, and whichever thread gets the lock adds every
+// queued transaction in one batch and publishes one new snapshot for all of them. Writers that were queued
+// meanwhile find their transaction already added once they get the lock, so a burst of writers shares one
+// round of locking, copying and publishing instead of taking turns.
+public class Ledger {
+    private static final int MAX_BATCH = 4096; // Requests added per round, so one writer never combines forever.
+
+    private final TransactionStore store;
+    private final LedgerIndex index;
+    private final VendorIndex vendors;
+    private final SearchIndex search;
+    private final Rollups rollups;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot current;
+
+    public Ledger() {
+        this(new TransactionStore());
+    }
+
+    // Takes over a store that is already filled, such as a freshly loaded file, and indexes all of its rows.
+    // The store must not be changed directly afterwards.
+    public Ledger(TransactionStore store) {
+        this.store = store;
+        index = new LedgerIndex(store);
+        vendors = new VendorIndex(store);
+        search = new SearchIndex(store);
+        rollups = new Rollups(store);
+        index.addNewRows();
+        vendors.addNewRows();
+        search.addNewRows();
+        rollups.addNewRows();
+        publish();
+    }
+
+    // Tells the listener about every batch of rows added from now on.
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Distinct words of the descriptions and vendors, and the approximate heap size of their index.
+    public int getSearchWordCount() { return search.getWordCount(); }
+
+    public long getSearchIndexBytes() { return search.estimatedBytes(); }
+
+    // The ledger as of the last completed write.
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public int size() {
+        return current.size();
+    }
+
+    // Adds the transaction. It is visible to every snapshot taken after this returns.
+    public void add(Transaction transaction) {
+        addAll(List.of(transaction));
+    }
+
+    // Adds the transactions together; a snapshot sees either all of them or none.
+    // If they can't be added, none of them are and the exception that stopped them is thrown here.
+    public void addAll(List<Transaction> transactions) {
+        Request request = new Request(transactions);
+        queue.add(request);
+        lock.lock();
+        try {
+            // A round takes at most MAX_BATCH requests, which may not reach this one yet
+            while (!request.done) {
+                combine();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (request.failure instanceof Error) {
+            throw (Error) request.failure;
+        }
+        if (request.failure != null) {
+            throw (RuntimeException) request.failure;
+        }
+    }
+
+    // Called with the lock held. Adds everything queued so far and publishes one snapshot for the whole batch.
+    private void combine() {
+        int first = store.size();
+        Request request;
+        int batched = 0;
+        while (batched < MAX_BATCH && (request = queue.poll()) != null) {
+            int start = store.size();
+            try {
+                for (Transaction transaction : request.transactions) {
+                    store.add(transaction.getStore(), transaction.getRow());
+                }
+            } catch (RuntimeException | Error e) {
+                // Take back the rows of the request added so far and hand the failure to its writer;
+                // the other requests of the batch are added as usual
+                store.truncate(start);
+                request.failure = e;
+            }
+            request.done = true;
+            batched++;
+        }
+        for (int row = first; row < store.size(); row++) {
+            index.add(row);
+            vendors.add(row);
+        }
+        search.addNewRows(); // In parallel for a big batch, such as a month loaded from its segment
+        // Published before the rollups are updated, so the rollups never cover rows the newest snapshot lacks
+        publish();
+        rollups.addNewRows();
+        for (Listener listener : listeners) {
+            listener.rowsAdded(current, first, store.size());
+        }
+    }
+
+    private void publish() {
+        TransactionStore rows = store.snapshot();
+        current = new Snapshot(rows, index.snapshot(rows));
+    }
+
+    // Told about each batch of added rows, after the snapshot that has them is published.
+    // Called by the writing thread with the ledger locked, so it has to be quick and must not add rows itself.
+    public interface Listener {
+        void rowsAdded(Snapshot snapshot, int fromRow, int toRow);
+    }
+
+    // An immutable view of the ledger. Every method answers for exactly the rows the snapshot has,
+    // however many rows were added since it was taken.
+    public class Snapshot {
+        private final TransactionStore rows;
+        private final LedgerIndex index;
+
+        private Snapshot(TransactionStore rows, LedgerIndex index) {
+            this.rows = rows;
+            this.index = index;
+        }
+
+        public int size() { return rows.size(); }
+
+        // The rows themselves, read-only.
+        public TransactionStore getRows() { return rows; }
+
+        // The rows in date and time order, read-only.
+        public LedgerIndex getIndex() { return index; }
+
+        public Transaction get(int row) { return rows.get(row); }
+
+        public PrimitiveIterator.OfInt ascending() { return index.ascending(); }
+
+        public PrimitiveIterator.OfInt descending() { return index.descending(); }
+
+        public PrimitiveIterator.OfInt ascending(int fromDay, int toDay) { return index.ascending(fromDay, toDay); }
+
+        public PrimitiveIterator.OfInt descending(int fromDay, int toDay) { return index.descending(fromDay, toDay); }
+
+        public void sort(int[] rowsToSort) { index.sort(rowsToSort); }
+
+        public IntList findVendor(String vendor) { return vendors.find(vendor, size()); }
+
+        public List<String> findVendorsByPrefix(String prefix) { return vendors.findByPrefix(prefix, size()); }
+
+        public List<String> findSimilarVendors(String vendor) { return vendors.findSimilar(vendor, size()); }
+
+        public IntList rowsOfVendors(List<String> vendorKeys) { return vendors.rowsOf(vendorKeys, size()); }
+
+        // Rows matching the query and dated from `fromDay` to `toDay` (epoch days, both inclusive),
+        // in the order they were added.
+        public IntList search(SearchIndex.Query query, int fromDay, int toDay) {
+            return search.search(query, rows, size(), fromDay, toDay);
+        }
+
+        public Rollups.Totals between(int fromDay, int toDay) {
+            return atThisVersion(rollups.between(fromDay, toDay), (store, row) -> {
+                int epochDay = store.getEpochDay(row);
+                return epochDay >= fromDay && epochDay <= toDay;
+            });
+        }
+
+        public Rollups.Totals asOf(int epochDay) {
+            return between(Integer.MIN_VALUE, epochDay);
+        }
+
+        public Rollups.Totals ofVendors(List<String> vendorNames) {
+            List<String> keys = vendorNames.stream().map(VendorIndex::normalize).toList();
+            return atThisVersion(rollups.ofVendors(vendorNames),
+                    (store, row) -> keys.contains(VendorIndex.normalize(store.getVendor(row))));
+        }
+
+        // The rollups are shared and may be a few rows behind or ahead of this snapshot, so add or take off
+        // the rows in between. Those are only the rows of writes that raced with this query.
+        private Rollups.Totals atThisVersion(Rollups.Totals totals, RowFilter counted) {
+            if (totals.getRows() < size()) {
+                for (int row = totals.getRows(); row < size(); row++) {
+                    if (counted.test(rows, row)) {
+                        totals.add(rows.getCents(row));
+                    }
+                }
+            } else if (totals.getRows() > size()) {
+                // Snapshots are published before the rollups move on, so the current one has these rows
+                TransactionStore newer = current.rows;
+                for (int row = size(); row < totals.getRows(); row++) {
+                    if (counted.test(newer, row)) {
+                        totals.remove(newer.getCents(row));
+                    }
+                }
+            }
+            totals.setRows(size());
+            return totals;
+        }
+    }
+
+    private interface RowFilter {
+        boolean test(TransactionStore store, int row);
+    }
+
+    private static class Request {
+        final List<Transaction> transactions;
+        boolean done; // Set and read with the lock held.
+        Throwable failure; // Why the transactions could not be added, if they weren't; set before `done`.
+
+        Request(List<Transaction> transactions) {
+            this.transactions = transactions;
+        }
+    }
+}
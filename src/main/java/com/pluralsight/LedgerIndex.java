@@ -0,0 +1,442 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// Keeps the rows of a `TransactionStore` ordered by (date, time, row) without ever re-sorting the store.
+// Rows are never moved in the store; since rows are only appended, the row number is also the insertion sequence,
+// so transactions at the exact same date and time stay in the order they were added.
+//
+// Row numbers are kept in small sorted blocks, like the leaves of a B-tree, and the blocks in a directory of
+// segments of up to SEGMENT_SIZE blocks each, like the level above them. An insert binary-searches the segments,
+// the blocks of one segment and then the block, and only ever shifts the entries of one block and one segment,
+// so it costs O(log n) comparisons plus a copy of at most BLOCK_SIZE ints no matter how big the ledger gets.
+//
+// `snapshot()` returns a read-only copy that shares the segments and blocks (copy-on-write). The next insert copies
+// the list of segments, which is n / (BLOCK_SIZE * SEGMENT_SIZE) long at most twice over, and a segment or a block
+// is only copied before it is changed, so a write after a snapshot copies one segment and not the whole directory,
+// and a snapshot never sees later inserts. Rows appended past the end of a shared block are invisible to the snapshot,
+// which only reads up to its own block sizes, so appends in date order rarely copy a block at all.
+public class LedgerIndex {
+    private static final int BLOCK_SIZE = 512;
+    private static final int SEGMENT_SIZE = 256; // Blocks per segment of the directory.
+
+    private final TransactionStore store;
+    private Segment[] segments = new Segment[1];
+    private boolean[] owned = new boolean[1]; // Segments no snapshot shares, which may be changed in place.
+    private boolean shared;                    // Whether a snapshot shares `segments`.
+    private final boolean readOnly;
+    private int segmentCount;
+    private int size;
+
+    public LedgerIndex(TransactionStore store) {
+        this.store = store;
+        readOnly = false;
+    }
+
+    private LedgerIndex(LedgerIndex source, TransactionStore store) {
+        this.store = store;
+        segments = source.segments;
+        segmentCount = source.segmentCount;
+        size = source.size;
+        readOnly = true;
+    }
+
+    // A read-only copy of the index as it is now, over `rows`, which must be a snapshot of the store with at least
+    // as many rows as the index has. Only the writing thread may call this.
+    public LedgerIndex snapshot(TransactionStore rows) {
+        shared = true;
+        return new LedgerIndex(this, rows);
+    }
+
+    public int size() { return size; }
+
+    // Indexes every row of the store that is not indexed yet. Rows that already arrive in order,
+    // such as a freshly loaded file, are appended to the last block without searching.
+    public void addNewRows() {
+        for (int row = size; row < store.size(); row++) {
+            add(row);
+        }
+    }
+
+    public void add(int row) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshot of the ledger index is read-only");
+        }
+        if (shared) {
+            // A snapshot still reads this list and its segments, so from now on work on copies
+            segments = segments.clone();
+            owned = new boolean[segments.length];
+            shared = false;
+        }
+        if (segmentCount == 0) {
+            Segment first = new Segment();
+            first.blocks[0] = new int[BLOCK_SIZE];
+            first.owned[0] = true;
+            first.blockCount = 1;
+            segments[0] = first;
+            owned[0] = true;
+            segmentCount = 1;
+        }
+
+        int s = findSegment(row);
+        Segment segment = writable(s);
+        int b = findBlock(segment, row);
+        int[] block = segment.blocks[b];
+        int count = segment.blockSizes[b];
+        int position = count > 0 && compare(block[count - 1], row) < 0 ? count : findInBlock(block, count, row);
+
+        if (count == BLOCK_SIZE) {
+            // Split the full block in half; keep appending blocks full when rows arrive in order.
+            boolean lastBlock = s == segmentCount - 1 && b == segment.blockCount - 1;
+            int keep = (lastBlock && position == count) ? BLOCK_SIZE : BLOCK_SIZE / 2;
+            if (keep < count && !segment.owned[b]) {
+                // The block gets shorter, so later appends to it would overwrite rows a snapshot still sees
+                block = block.clone();
+                segment.blocks[b] = block;
+                segment.owned[b] = true;
+            }
+            int[] next = new int[BLOCK_SIZE];
+            int nextCount = count - keep;
+            System.arraycopy(block, keep, next, 0, nextCount);
+            segment.blockSizes[b] = keep;
+            if (position > keep || (position == keep && keep == BLOCK_SIZE)) {
+                insert(next, nextCount, position - keep, row);
+                nextCount++;
+            } else {
+                insert(block, keep, position, row);
+                segment.blockSizes[b]++;
+            }
+            // Last, as it may move the block to a new segment
+            insertBlock(s, b + 1, next, nextCount);
+        } else {
+            if (position < count && !segment.owned[b]) {
+                // Shifting entries would change what a snapshot sees
+                block = block.clone();
+                segment.blocks[b] = block;
+                segment.owned[b] = true;
+            }
+            insert(block, count, position, row);
+            segment.blockSizes[b]++;
+        }
+        size++;
+    }
+
+    private static void insert(int[] block, int count, int position, int row) {
+        System.arraycopy(block, position, block, position + 1, count - position);
+        block[position] = row;
+    }
+
+    // Oldest to newest.
+    public PrimitiveIterator.OfInt ascending() {
+        return new Cursor(0, 0, 0, true, Integer.MAX_VALUE);
+    }
+
+    // Newest to oldest, the order the ledger is shown in.
+    public PrimitiveIterator.OfInt descending() {
+        return descending(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // The rows dated from `fromDay` to `toDay` (epoch days, both inclusive), oldest to newest.
+    // The start is found by binary search, so the cost depends on the number of rows in the range, not the ledger.
+    public PrimitiveIterator.OfInt ascending(int fromDay, int toDay) {
+        int[] start = lowerBound(fromDay);
+        return new Cursor(start[0], start[1], start[2], true, toDay);
+    }
+
+    // The rows dated from `fromDay` to `toDay` (epoch days, both inclusive), newest to oldest.
+    public PrimitiveIterator.OfInt descending(int fromDay, int toDay) {
+        if (segmentCount == 0) {
+            return new Cursor(-1, 0, 0, false, fromDay);
+        }
+        if (toDay == Integer.MAX_VALUE) {
+            Segment last = segments[segmentCount - 1];
+            int b = last.blockCount - 1;
+            return new Cursor(segmentCount - 1, b, last.blockSizes[b] - 1, false, fromDay);
+        }
+        // Start just before the first row dated after `toDay`.
+        int[] end = lowerBound(toDay + 1);
+        return new Cursor(end[0], end[1], end[2] - 1, false, fromDay);
+    }
+
+    // Sorts a set of rows, such as the matches of a search, into index order (oldest first).
+    // This costs O(k log k) for k rows, independent of the size of the ledger.
+    public void sort(int[] rows) {
+        if (rows.length > 1) {
+            mergeSort(rows, rows.clone(), 0, rows.length);
+        }
+    }
+
+    // Sorts rows[from, to) using `scratch`, which holds a copy of the same range.
+    private void mergeSort(int[] rows, int[] scratch, int from, int to) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && compare(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(scratch, rows, from, mid);
+        mergeSort(scratch, rows, mid, to);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && compare(scratch[left], scratch[right]) <= 0)) {
+                rows[i] = scratch[left++];
+            } else {
+                rows[i] = scratch[right++];
+            }
+        }
+    }
+
+    // Orders rows by date, then time, then row number.
+    int compare(int a, int b) {
+        int byDate = Integer.compare(store.getEpochDay(a), store.getEpochDay(b));
+        if (byDate != 0) return byDate;
+        int byTime = Integer.compare(store.getSecondOfDay(a), store.getSecondOfDay(b));
+        if (byTime != 0) return byTime;
+        return Integer.compare(a, b);
+    }
+
+    // Position of the first row dated on or after the given day, as {segment, block, offset}.
+    // Past the last row it points one past the end of the last block.
+    private int[] lowerBound(int epochDay) {
+        int low = 0;
+        int high = segmentCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (store.getEpochDay(lastRow(segments[mid])) < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == segmentCount) {
+            if (segmentCount == 0) {
+                return new int[] {0, 0, 0};
+            }
+            Segment last = segments[segmentCount - 1];
+            return new int[] {segmentCount - 1, last.blockCount - 1, last.blockSizes[last.blockCount - 1]};
+        }
+
+        Segment segment = segments[low];
+        int first = 0;
+        int last = segment.blockCount - 1;
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (store.getEpochDay(segment.blocks[mid][segment.blockSizes[mid] - 1]) < epochDay) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+
+        int[] block = segment.blocks[first];
+        int from = 0;
+        int to = segment.blockSizes[first];
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (store.getEpochDay(block[mid]) < epochDay) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return new int[] {low, first, from};
+    }
+
+    private static int lastRow(Segment segment) {
+        int last = segment.blockCount - 1;
+        return segment.blocks[last][segment.blockSizes[last] - 1];
+    }
+
+    // The first segment whose last row sorts after the given row, or the last segment.
+    private int findSegment(int row) {
+        int low = 0;
+        int high = segmentCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(lastRow(segments[mid]), row) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // The first block of the segment whose last row sorts after the given row, or its last block.
+    private int findBlock(Segment segment, int row) {
+        int low = 0;
+        int high = segment.blockCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(segment.blocks[mid][segment.blockSizes[mid] - 1], row) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findInBlock(int[] block, int count, int row) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(block[mid], row) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // The segment, copied first if a snapshot shares it.
+    private Segment writable(int s) {
+        if (!owned[s]) {
+            segments[s] = new Segment(segments[s]);
+            owned[s] = true;
+        }
+        return segments[s];
+    }
+
+    // Puts a block into segment `s`, which must be writable, at position `at`.
+    private void insertBlock(int s, int at, int[] block, int count) {
+        Segment segment = segments[s];
+        if (segment.blockCount == SEGMENT_SIZE) {
+            // Split the full segment in half; keep appending segments full when blocks are added at the end.
+            int keep = (s == segmentCount - 1 && at == SEGMENT_SIZE) ? SEGMENT_SIZE : SEGMENT_SIZE / 2;
+            Segment next = new Segment();
+            next.blockCount = SEGMENT_SIZE - keep;
+            System.arraycopy(segment.blocks, keep, next.blocks, 0, next.blockCount);
+            System.arraycopy(segment.blockSizes, keep, next.blockSizes, 0, next.blockCount);
+            System.arraycopy(segment.owned, keep, next.owned, 0, next.blockCount);
+            Arrays.fill(segment.blocks, keep, SEGMENT_SIZE, null);
+            segment.blockCount = keep;
+            insertSegment(s + 1, next);
+            if (at > keep || (at == keep && keep == SEGMENT_SIZE)) {
+                segment = next;
+                at -= keep;
+            }
+        }
+        int moved = segment.blockCount - at;
+        System.arraycopy(segment.blocks, at, segment.blocks, at + 1, moved);
+        System.arraycopy(segment.blockSizes, at, segment.blockSizes, at + 1, moved);
+        System.arraycopy(segment.owned, at, segment.owned, at + 1, moved);
+        segment.blocks[at] = block;
+        segment.blockSizes[at] = count;
+        segment.owned[at] = true;
+        segment.blockCount++;
+    }
+
+    private void insertSegment(int at, Segment segment) {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            owned = Arrays.copyOf(owned, segmentCount * 2);
+        }
+        System.arraycopy(segments, at, segments, at + 1, segmentCount - at);
+        System.arraycopy(owned, at, owned, at + 1, segmentCount - at);
+        segments[at] = segment;
+        owned[at] = true;
+        segmentCount++;
+    }
+
+    // Up to SEGMENT_SIZE blocks of the directory, in order, and how many rows each holds.
+    // Never changed once a snapshot shares it; the index changes a copy instead.
+    private static class Segment {
+        final int[][] blocks;
+        final int[] blockSizes;
+        final boolean[] owned; // Blocks no snapshot shares, which may be changed in place.
+        int blockCount;
+
+        Segment() {
+            blocks = new int[SEGMENT_SIZE][];
+            blockSizes = new int[SEGMENT_SIZE];
+            owned = new boolean[SEGMENT_SIZE];
+        }
+
+        // A copy that shares the blocks of `source`, none of which it may change in place.
+        Segment(Segment source) {
+            blocks = source.blocks.clone();
+            blockSizes = source.blockSizes.clone();
+            owned = new boolean[SEGMENT_SIZE];
+            blockCount = source.blockCount;
+        }
+    }
+
+    // Walks the blocks in either direction, stopping at the end of the index or at the first row
+    // past `limitDay` (dated after it going forward, before it going backward).
+    private class Cursor implements PrimitiveIterator.OfInt {
+        private int segment;
+        private int block;
+        private int offset;
+        private int[] rows;   // The current block, or null past the end.
+        private int rowCount; // How many rows of it the index holds.
+        private final boolean forward;
+        private final int limitDay;
+
+        Cursor(int segment, int block, int offset, boolean forward, int limitDay) {
+            this.segment = segment;
+            this.block = block;
+            this.offset = offset;
+            this.forward = forward;
+            this.limitDay = limitDay;
+            if (segment >= 0 && segment < segmentCount) {
+                rows = segments[segment].blocks[block];
+                rowCount = segments[segment].blockSizes[block];
+            }
+            skipEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (rows == null) {
+                return false;
+            }
+            int epochDay = store.getEpochDay(rows[offset]);
+            return forward ? epochDay <= limitDay : epochDay >= limitDay;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int row = rows[offset];
+            offset += forward ? 1 : -1;
+            skipEmpty();
+            return row;
+        }
+
+        // Moves onto the next block, and the next segment, once the current one is used up.
+        private void skipEmpty() {
+            while (rows != null && (offset < 0 || offset >= rowCount)) {
+                block += forward ? 1 : -1;
+                if (forward && block == segments[segment].blockCount) {
+                    segment++;
+                    block = 0;
+                } else if (!forward && block < 0) {
+                    segment--;
+                    block = segment >= 0 ? segments[segment].blockCount - 1 : 0;
+                }
+                if (segment < 0 || segment >= segmentCount) {
+                    rows = null;
+                } else {
+                    rows = segments[segment].blocks[block];
+                    rowCount = segments[segment].blockSizes[block];
+                    offset = forward ? 0 : rowCount - 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// The ledger stored as one file per month instead of one transactions.csv: <directory>/<yyyy>/<yyyy-MM>.csv in the
+// usual "date|time|description|vendor|amount" format, plus <directory>/manifest.csv with the row count, first and
+// last date, totals and file sizes of every month. Opening reads the manifest only; a month is loaded into the ledger
+// the first time a query needs one of its dates, so a report on this month reads and holds this month alone.
+// Balances add up the manifest totals of the months before the date instead of loading them.
+//
+// `compact` sorts and gzips the files of older months into <yyyy-MM>.csv.gz. Rows added to a compacted month
+// later go to a new <yyyy-MM>.csv next to it until the month is compacted again.
+//
+// The manifest is written on close. A month whose files don't have the sizes the manifest lists (after a crash,
+// say) is read again when the segments are opened, so the manifest can always be rebuilt from the files.
+public class LedgerSegments implements Closeable {
+    public static final String MANIFEST = "manifest.csv";
+    private static final int MAX_OPEN_WRITERS = 4; // Months that keep their file open for appends.
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Metrics.Operation LOAD = Metrics.operation("segment_load",
+            "Loading a month of the ledger from its segment files");
+    private static final Metrics.Operation COMPACT = Metrics.operation("segment_compact",
+            "Sorting and compressing a month's segment files");
+
+    private final File directory;
+    private final Ledger ledger;
+    private final TreeMap<YearMonth, Segment> segments = new TreeMap<>();
+    private final Set<YearMonth> loaded = new HashSet<>();
+    private final Map<YearMonth, TransactionWriter> writers = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean manifestChanged;
+
+    private LedgerSegments(File directory, Ledger ledger) {
+        this.directory = directory;
+        this.ledger = ledger;
+    }
+
+    // Opens the segments in the directory, creating it if needed. Months are loaded into `ledger` as they are needed.
+    public static LedgerSegments open(File directory, Ledger ledger) throws IOException {
+        Files.createDirectories(directory.toPath());
+        LedgerSegments segments = new LedgerSegments(directory, ledger);
+        segments.recover();
+        segments.readManifest();
+        Metrics.gauge("tracker_segment_months_loaded", "Months of the ledger loaded from their segments",
+                segments::getLoadedMonthCount);
+        return segments;
+    }
+
+    // Writes the rows of a transactions file into month segments in the directory and returns how many there were.
+    // The file itself is left as it is.
+    public static long split(File csv, File directory) throws IOException {
+        TransactionStore rows = new TransactionStore();
+        new TransactionLoader(csv).load(rows);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        // The loader put the rows in date order
+        Ledger.Snapshot ledger = new Ledger(rows).snapshot();
+        YearMonth last = month(rows.getEpochDay(rows.size() - 1));
+        for (YearMonth month = month(rows.getEpochDay(0)); !month.isAfter(last); month = month.plusMonths(1)) {
+            int fromDay = (int) month.atDay(1).toEpochDay();
+            int toDay = (int) month.atEndOfMonth().toEpochDay();
+            if (ledger.ascending(fromDay, toDay).hasNext()) {
+                File file = csvFile(directory, month);
+                Files.createDirectories(file.getParentFile().toPath());
+                new TransactionExporter(file).export(ledger, fromDay, toDay);
+            }
+        }
+        return rows.size();
+    }
+
+    public Ledger getLedger() { return ledger; }
+
+    public synchronized int getMonthCount() { return segments.size(); }
+
+    public synchronized int getLoadedMonthCount() { return loaded.size(); }
+
+    // Every row in the segments, loaded or not.
+    public synchronized long getRowCount() {
+        long rows = 0;
+        for (Segment segment : segments.values()) {
+            rows += segment.rows;
+        }
+        return rows;
+    }
+
+    // Makes sure the ledger has every row dated from `fromDay` to `toDay` (epoch days, both inclusive),
+    // loading the months it doesn't have yet.
+    public synchronized void load(int fromDay, int toDay) throws IOException {
+        if (fromDay > toDay) {
+            return;
+        }
+        for (Segment segment : segments.subMap(month(fromDay), true, month(toDay), true).values()) {
+            if (segment.lastDay >= fromDay && segment.firstDay <= toDay) {
+                load(segment.month);
+            }
+        }
+    }
+
+    public synchronized void loadAll() throws IOException {
+        for (YearMonth month : segments.keySet()) {
+            load(month);
+        }
+    }
+
+    // The totals of every row up to and including the day. Only the day's own month is loaded;
+    // the months before it are added up from the manifest.
+    public synchronized Rollups.Totals balanceAsOf(int epochDay) throws IOException {
+        YearMonth month = month(epochDay);
+        Rollups.Totals totals = new Rollups.Totals();
+        for (Segment segment : segments.headMap(month).values()) {
+            totals.add(segment.totals);
+        }
+        if (segments.containsKey(month)) {
+            load(month);
+            totals.add(ledger.snapshot().between((int) month.atDay(1).toEpochDay(), epochDay));
+        }
+        return totals;
+    }
+
+    // Appends the transactions to the segments of their months. Those whose month is loaded are added to the
+    // ledger too; the others are read with their month when it is loaded.
+    public synchronized void appendAll(List<Transaction> transactions) throws IOException {
+        Map<YearMonth, List<Transaction>> byMonth = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            byMonth.computeIfAbsent(YearMonth.from(transaction.getDate()), month -> new ArrayList<>()).add(transaction);
+        }
+        List<Transaction> shown = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<Transaction>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            List<String> records = new ArrayList<>(entry.getValue().size());
+            for (Transaction transaction : entry.getValue()) {
+                records.add(transaction.toString());
+            }
+            writer(month).appendAll(records);
+
+            Segment segment = segments.computeIfAbsent(month, Segment::new);
+            for (Transaction transaction : entry.getValue()) {
+                segment.add((int) transaction.getDate().toEpochDay(), transaction.getAmount().getCents());
+            }
+            segment.csvBytes = csvFile(directory, month).length();
+            manifestChanged = true;
+            if (loaded.contains(month)) {
+                shown.addAll(entry.getValue());
+            }
+        }
+        if (!shown.isEmpty()) {
+            ledger.addAll(shown);
+        }
+    }
+
+    // Compacts every month before `before` that has rows in a plain segment file, and returns how many there were.
+    public synchronized int compact(YearMonth before) throws IOException {
+        int compacted = 0;
+        for (Segment segment : segments.headMap(before).values()) {
+            if (csvFile(directory, segment.month).exists()) {
+                compact(segment);
+                compacted++;
+            }
+        }
+        if (compacted > 0) {
+            writeManifest();
+        }
+        return compacted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (TransactionWriter writer : writers.values()) {
+            writer.close();
+        }
+        writers.clear();
+        if (manifestChanged) {
+            writeManifest();
+        }
+    }
+
+    private void load(YearMonth month) throws IOException {
+        if (loaded.contains(month)) {
+            return;
+        }
+        Metrics.Timing timing = LOAD.start();
+        TransactionStore rows = new TransactionStore();
+        read(month, rows);
+        List<Transaction> transactions = new ArrayList<>(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            transactions.add(rows.get(row));
+        }
+        ledger.addAll(transactions);
+        loaded.add(month);
+        timing.stop(rows.size());
+    }
+
+    // Appends the month's rows to the store: the compacted ones, then the ones added since.
+    private void read(YearMonth month, TransactionStore store) throws IOException {
+        File packed = packedFile(directory, month);
+        if (packed.exists()) {
+            byte[] content;
+            try (InputStream in = new GZIPInputStream(new FileInputStream(packed), BUFFER_SIZE)) {
+                content = in.readAllBytes();
+            }
+            new TransactionLoader(packed).load(store, ByteBuffer.wrap(content));
+        }
+        File csv = csvFile(directory, month);
+        if (csv.exists()) {
+            TransactionLoader loader = new TransactionLoader(csv);
+            loader.load(store);
+            if (loader.getTornLineOffset() >= 0) {
+                // The last write before the program stopped never finished
+                TransactionWriter.discardTornTail(csv, loader.getTornLineOffset());
+            }
+        }
+    }
+
+    private TransactionWriter writer(YearMonth month) throws IOException {
+        TransactionWriter writer = writers.get(month);
+        if (writer == null) {
+            if (writers.size() == MAX_OPEN_WRITERS) {
+                Iterator<TransactionWriter> leastRecent = writers.values().iterator();
+                leastRecent.next().close();
+                leastRecent.remove();
+            }
+            File file = csvFile(directory, month);
+            Files.createDirectories(file.getParentFile().toPath());
+            writer = TransactionWriter.open(file);
+            writers.put(month, writer);
+        }
+        return writer;
+    }
+
+    // The month's rows, sorted, are written to "<yyyy-MM>.csv.gz.tmp", which is renamed to "<yyyy-MM>.csv.gz.new"
+    // once complete. From that rename on the compaction counts as done: the plain file is deleted and the new file
+    // takes the place of the old one, and `recover` finishes those two steps if the program stopped in between.
+    private void compact(Segment segment) throws IOException {
+        Metrics.Timing timing = COMPACT.start();
+        YearMonth month = segment.month;
+        TransactionWriter writer = writers.remove(month);
+        if (writer != null) {
+            writer.close();
+        }
+        TransactionStore rows = new TransactionStore();
+        read(month, rows);
+
+        File packed = packedFile(directory, month);
+        File written = new File(packed.getPath() + ".tmp");
+        new TransactionExporter(written).export(new Ledger(rows).snapshot(), segment.firstDay, segment.lastDay,
+                new GZIPOutputStream(new FileOutputStream(written), BUFFER_SIZE));
+        try (FileChannel channel = FileChannel.open(written.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(written.toPath(), new File(packed.getPath() + ".new").toPath(), StandardCopyOption.ATOMIC_MOVE);
+        finishCompaction(month);
+        segment.csvBytes = 0;
+        segment.packedBytes = packed.length();
+        timing.stop(rows.size());
+    }
+
+    private void finishCompaction(YearMonth month) throws IOException {
+        File packed = packedFile(directory, month);
+        Files.deleteIfExists(csvFile(directory, month).toPath());
+        Files.move(new File(packed.getPath() + ".new").toPath(), packed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Finishes the compactions that got as far as their ".new" file and drops the ones that didn't.
+    private void recover() throws IOException {
+        File[] years = directory.listFiles(File::isDirectory);
+        if (years == null) {
+            return;
+        }
+        for (File year : years) {
+            File[] files = year.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".csv.gz.new")) {
+                    finishCompaction(YearMonth.parse(name.substring(0, name.length() - ".csv.gz.new".length())));
+                } else if (name.endsWith(".tmp")) {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+    }
+
+    // Takes each month's entry from the manifest if its file sizes still match, and reads the month's files otherwise.
+    private void readManifest() throws IOException {
+        Map<YearMonth, Segment> listed = new HashMap<>();
+        File manifest = new File(directory, MANIFEST);
+        if (manifest.exists()) {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    Segment segment = Segment.parse(line);
+                    listed.put(segment.month, segment);
+                } catch (RuntimeException e) {
+                    // A damaged line; the month's files are read below instead
+                }
+            }
+        }
+
+        for (YearMonth month : monthsOnDisk()) {
+            Segment segment = listed.get(month);
+            if (segment == null || segment.csvBytes != csvFile(directory, month).length()
+                    || segment.packedBytes != packedFile(directory, month).length()) {
+                segment = scan(month);
+                manifestChanged = true;
+            }
+            segments.put(month, segment);
+        }
+        if (manifestChanged || listed.size() != segments.size()) {
+            writeManifest();
+        }
+    }
+
+    private Segment scan(YearMonth month) throws IOException {
+        TransactionStore rows = new TransactionStore();
+        read(month, rows);
+        Segment segment = new Segment(month);
+        for (int row = 0; row < rows.size(); row++) {
+            segment.add(rows.getEpochDay(row), rows.getCents(row));
+        }
+        segment.csvBytes = csvFile(directory, month).length();
+        segment.packedBytes = packedFile(directory, month).length();
+        return segment;
+    }
+
+    private Set<YearMonth> monthsOnDisk() {
+        Set<YearMonth> months = new TreeSet<>();
+        File[] years = directory.listFiles(File::isDirectory);
+        if (years == null) {
+            return months;
+        }
+        for (File year : years) {
+            String[] names = year.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String month = name.endsWith(".csv") ? name.substring(0, name.length() - ".csv".length())
+                        : name.endsWith(".csv.gz") ? name.substring(0, name.length() - ".csv.gz".length()) : null;
+                if (month != null) {
+                    try {
+                        months.add(YearMonth.parse(month));
+                    } catch (DateTimeParseException e) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        return months;
+    }
+
+    // Written to a temporary file and renamed over the old manifest, so a crash leaves one or the other.
+    private void writeManifest() throws IOException {
+        StringBuilder text = new StringBuilder("# month|rows|first date|last date|deposits|deposit count"
+                + "|payments|payment count|csv bytes|csv.gz bytes\n");
+        for (Segment segment : segments.values()) {
+            segment.appendTo(text);
+        }
+        Path manifest = new File(directory, MANIFEST).toPath();
+        Path written = new File(directory, MANIFEST + ".tmp").toPath();
+        Files.writeString(written, text, StandardCharsets.UTF_8);
+        Files.move(written, manifest, StandardCopyOption.ATOMIC_MOVE);
+        manifestChanged = false;
+    }
+
+    private static YearMonth month(int epochDay) {
+        return YearMonth.from(LocalDate.ofEpochDay(epochDay));
+    }
+
+    private static File csvFile(File directory, YearMonth month) {
+        return new File(new File(directory, String.format("%04d", month.getYear())), month + ".csv");
+    }
+
+    private static File packedFile(File directory, YearMonth month) {
+        return new File(new File(directory, String.format("%04d", month.getYear())), month + ".csv.gz");
+    }
+
+    // One month as the manifest lists it.
+    private static class Segment {
+        final YearMonth month;
+        final Rollups.Totals totals;
+        int rows;
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        long csvBytes;
+        long packedBytes;
+
+        Segment(YearMonth month) {
+            this(month, new Rollups.Totals());
+        }
+
+        Segment(YearMonth month, Rollups.Totals totals) {
+            this.month = month;
+            this.totals = totals;
+        }
+
+        void add(int epochDay, long cents) {
+            rows++;
+            firstDay = Math.min(firstDay, epochDay);
+            lastDay = Math.max(lastDay, epochDay);
+            totals.add(cents);
+        }
+
+        // 2024-10|412|2024-10-01|2024-10-31|5230.00|3|-4120.55|409|20961|0
+        void appendTo(StringBuilder out) {
+            out.append(month).append('|').append(rows).append('|');
+            if (rows > 0) {
+                TableRenderer.appendDate(out, firstDay);
+                out.append('|');
+                TableRenderer.appendDate(out, lastDay);
+            } else {
+                out.append("-|-");
+            }
+            out.append('|');
+            Money.appendTo(out, totals.getDepositCents(), 2);
+            out.append('|').append(totals.getDepositCount()).append('|');
+            Money.appendTo(out, totals.getPaymentCents(), 2);
+            out.append('|').append(totals.getPaymentCount());
+            out.append('|').append(csvBytes).append('|').append(packedBytes).append('\n');
+        }
+
+        static Segment parse(String line) {
+            String[] fields = line.split("\\|");
+            if (fields.length != 10) {
+                throw new IllegalArgumentException("expected 10 fields");
+            }
+            Segment segment = new Segment(YearMonth.parse(fields[0]), new Rollups.Totals(
+                    Money.parse(fields[4]).getCents(), Long.parseLong(fields[5]),
+                    Money.parse(fields[6]).getCents(), Long.parseLong(fields[7])));
+            segment.rows = Integer.parseInt(fields[1]);
+            if (segment.rows > 0) {
+                segment.firstDay = (int) LocalDate.parse(fields[2]).toEpochDay();
+                segment.lastDay = (int) LocalDate.parse(fields[3]).toEpochDay();
+            }
+            segment.csvBytes = Long.parseLong(fields[8]);
+            segment.packedBytes = Long.parseLong(fields[9]);
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.pluralsight;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// An HTTP/JSON API over a `LedgerService`, built on the JDK's own HTTP server.
+//
+//   GET  /ledger                  every transaction, newest first
+//   GET  /ledger/deposits         the deposits
+//   GET  /ledger/payments         the payments
+//   GET  /reports/range?from=yyyy-MM-dd&to=yyyy-MM-dd    the transactions and totals of a date range
+//   GET  /reports/vendor?name=... the transactions and totals of a vendor (or the closest vendors)
+//   GET  /reports/balance?date=yyyy-MM-dd                the balance as of a date
+//   GET  /reports/search?q=...[&from=yyyy-MM-dd&to=yyyy-MM-dd]  the transactions and totals matching a search
+//   POST /deposits, POST /payments   {"date":"...","time":"HH:mm:ss","description":"...","vendor":"...","amount":12.50}
+//   GET  /metrics                 the tracker's metrics in the Prometheus text format
+//
+// The list endpoints take an optional `limit`. Their rows are written as they are read from the ledger, in chunked
+// encoding, so a response of millions of rows is never held in memory. Requests run on a fixed pool of
+// `tracker.httpThreads` platform threads (16 by default); the project targets Java 17, so there are no virtual
+// threads, and a slow client holds one of the pool's threads until its response is written.
+public class LedgerServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_BODY = 1 << 16;
+    private static final int THREADS = Integer.getInteger("tracker.httpThreads", 16);
+    // Only this machine can reach the API unless "tracker.httpHost" says otherwise; it can add transactions.
+    private static final String HOST = System.getProperty("tracker.httpHost", "localhost");
+    private static final Metrics.Operation REQUEST = Metrics.operation("http_request", "Requests to the HTTP API");
+    private static final Metrics.Counter FAILED = Metrics.counter("tracker_http_errors_total",
+            "Requests to the HTTP API answered with an error status");
+
+    private final LedgerService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private LedgerServer(LedgerService service, HttpServer server, ExecutorService executor) {
+        this.service = service;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    // Starts serving on the port; port 0 picks a free one, see `getPort`.
+    public static LedgerServer start(LedgerService service, int port) throws IOException {
+        // Responses go out as headers, chunks and a last empty chunk; with Nagle's algorithm on, each small write
+        // after the first waits for the client's delayed ACK, which costs about 40 ms per request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(HOST, port), 1024);
+        if (THREADS <= 0) {
+            throw new IllegalArgumentException("Invalid tracker.httpThreads setting: " + THREADS + " (expected n > 0)");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        LedgerServer ledgerServer = new LedgerServer(service, server, executor);
+        ledgerServer.route("/ledger", "GET", ledgerServer::ledger);
+        ledgerServer.route("/reports/range", "GET", ledgerServer::range);
+        ledgerServer.route("/reports/vendor", "GET", ledgerServer::vendor);
+        ledgerServer.route("/reports/balance", "GET", ledgerServer::balance);
+        ledgerServer.route("/reports/search", "GET", ledgerServer::search);
+        ledgerServer.route("/deposits", "POST", exchange -> ledgerServer.add(exchange, false));
+        ledgerServer.route("/payments", "POST", exchange -> ledgerServer.add(exchange, true));
+        ledgerServer.route("/metrics", "GET", LedgerServer::metrics);
+        server.setExecutor(executor);
+        server.start();
+        return ledgerServer;
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    // Stops accepting requests and gives the running ones a second to finish.
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Answers the request and returns how many rows it sent.
+    private interface Handler {
+        long handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Answers bad input with 400 and anything else that goes wrong with 500, unless the response was already started.
+    private void route(String path, String method, Handler handler) {
+        server.createContext(path, exchange -> {
+            Metrics.Timing timing = REQUEST.start();
+            long rows = 0;
+            try {
+                if (!exchange.getRequestMethod().equals(method)) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    sendError(exchange, 405, "Use " + method + " for " + path);
+                } else {
+                    rows = handler.handle(exchange);
+                }
+            } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+                LedgerService.INPUT_ERRORS.increment();
+                sendError(exchange, 400, e.getMessage());
+            } catch (Exception e) {
+                sendError(exchange, 500, e.toString());
+            } finally {
+                exchange.close();
+                if (exchange.getResponseCode() >= 400) {
+                    FAILED.increment();
+                }
+                timing.stop(rows);
+            }
+        });
+    }
+
+    private long ledger(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        switch (exchange.getRequestURI().getPath()) {
+            case "/ledger":
+            case "/ledger/":
+                return sendRows(exchange, service.all(), limit(query), "", null);
+            case "/ledger/deposits":
+                return sendRows(exchange, service.deposits(), limit(query), "", null);
+            case "/ledger/payments":
+                return sendRows(exchange, service.payments(), limit(query), "", null);
+            default:
+                sendError(exchange, 404, "No such endpoint: " + exchange.getRequestURI().getPath());
+                return 0;
+        }
+    }
+
+    private long range(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        LocalDate from = LocalDate.parse(required(query, "from"));
+        LocalDate to = LocalDate.parse(required(query, "to"));
+        LedgerService.View view = service.between(from, to);
+        return sendRows(exchange, view, limit(query), "", view.getTotals());
+    }
+
+    private long vendor(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        LedgerService.View view = service.byVendor(required(query, "name").trim());
+        List<String> vendors = view.getVendors();
+        StringBuilder head = new StringBuilder("\"vendors\":[");
+        for (int i = 0; i < vendors.size(); i++) {
+            if (i > 0) {
+                head.append(',');
+            }
+            Json.appendString(head, vendors.get(i));
+        }
+        head.append("],");
+        return sendRows(exchange, view, limit(query), head.toString(), view.getTotals());
+    }
+
+    private long search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String text = required(query, "q");
+        LedgerService.View view = query.containsKey("from") || query.containsKey("to")
+                ? service.search(text, LocalDate.parse(required(query, "from")), LocalDate.parse(required(query, "to")))
+                : service.search(text);
+        StringBuilder head = new StringBuilder("\"query\":");
+        Json.appendString(head, text);
+        head.append(',');
+        return sendRows(exchange, view, limit(query), head.toString(), view.getTotals());
+    }
+
+    private long balance(HttpExchange exchange) throws IOException {
+        LocalDate date = LocalDate.parse(required(query(exchange), "date"));
+        StringBuilder body = new StringBuilder("{\"date\":\"").append(date).append("\",\"balance\":");
+        Rollups.Totals totals = service.balanceAsOf(date);
+        Money.appendTo(body, totals.getNetCents(), 2);
+        body.append(",\"totals\":");
+        Json.appendTotals(body, totals);
+        send(exchange, 200, body.append('}').toString());
+        return 0;
+    }
+
+    private long add(HttpExchange exchange, boolean isPayment) throws IOException {
+        Map<String, String> fields = Json.parseObject(readBody(exchange));
+        LocalDate date = LocalDate.parse(required(fields, "date"));
+        LocalTime time = LocalTime.parse(required(fields, "time"));
+        String description = required(fields, "description").trim();
+        String vendor = required(fields, "vendor").trim();
+        Money amount = Money.parse(required(fields, "amount"));
+        Transaction transaction = isPayment
+                ? service.addPayment(date, time, description, vendor, amount)
+                : service.addDeposit(date, time, description, vendor, amount);
+        StringBuilder body = new StringBuilder(128);
+        Json.appendTransaction(body, transaction.getStore(), transaction.getRow());
+        send(exchange, 201, body.toString());
+        return 1;
+    }
+
+    private static long metrics(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+        Metrics.writePrometheus(out);
+        out.flush();
+        return 0;
+    }
+
+    // {<head>"transactions":[...],"count":n[,"totals":{...}]}, streamed a row at a time. Returns n.
+    private static long sendRows(HttpExchange exchange, LedgerService.View view, long limit, String head,
+                                 Rollups.Totals totals) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // Length 0 means chunked
+        Writer out = new OutputStreamWriter(new BufferedOutputStream(exchange.getResponseBody(), BUFFER_SIZE),
+                StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder(1024);
+        text.append('{').append(head).append("\"transactions\":[");
+        TransactionStore rows = view.getRows();
+        PrimitiveIterator.OfInt cursor = view.iterator();
+        long count = 0;
+        while (count < limit && cursor.hasNext()) {
+            if (count++ > 0) {
+                text.append(',');
+            }
+            Json.appendTransaction(text, rows, cursor.nextInt());
+            if (text.length() >= BUFFER_SIZE / 4) {
+                out.append(text);
+                text.setLength(0);
+            }
+        }
+        text.append("],\"count\":").append(count);
+        if (totals != null) {
+            text.append(",\"totals\":");
+            Json.appendTotals(text, totals);
+        }
+        text.append('}');
+        out.append(text);
+        out.flush();
+        return count;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            return; // Part of the response was sent already; closing the exchange cuts it short
+        }
+        StringBuilder body = new StringBuilder("{\"error\":");
+        Json.appendString(body, message == null ? "Error" : message);
+        send(exchange, status, body.append('}').toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) {
+                throw new IllegalArgumentException("Request body is larger than " + MAX_BODY + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing \"" + name + "\"");
+        }
+        return value;
+    }
+
+    private static long limit(Map<String, String> query) {
+        String limit = query.get("limit");
+        if (limit == null) {
+            return Long.MAX_VALUE;
+        }
+        long value = Long.parseLong(limit);
+        if (value < 0) {
+            throw new IllegalArgumentException("\"limit\" can't be negative");
+        }
+        return value;
+    }
+}
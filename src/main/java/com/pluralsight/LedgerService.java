@@ -0,0 +1,479 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+// The operations of the tracker without any console around them: adding deposits and payments, the ledger views,
+// date range, vendor and full-text search reports, analytics, balances, and import and export. The menus of `FinancialTracker` and the HTTP API
+// of `LedgerServer` both go through it. Safe to use from any number of threads.
+//
+// Every query returns a `View` over one snapshot of the ledger, so a view never changes while it is being read,
+// and its rows are visited lazily, so a view of millions of rows can be streamed without building a list.
+//
+// The rows are kept either in one transactions file or in month segments (see LedgerSegments). With segments,
+// each query first loads the months it covers that aren't in the ledger yet.
+public class LedgerService {
+    // Vendor and search reports walk the ledger in order instead of sorting their rows
+    // when they have more than one row in this many.
+    private static final int BIG_REPORT_SHARE = 64;
+    // Row numbers the report cache may hold in all; 0 turns the cache off.
+    private static final long REPORT_CACHE_ROWS = Long.getLong("tracker.reportCacheRows", 1_000_000);
+    private static final Metrics.Operation WRITE = Metrics.operation("write", "Adding a transaction to the file and the ledger");
+    private static final Metrics.Operation IMPORT = Metrics.operation("import", "Importing a transactions file");
+    private static final Metrics.Operation SEARCH = Metrics.operation("search", "Full-text searches of the ledger");
+    private static final Metrics.Operation EXPORT = Metrics.operation("export", "Exporting transactions to a file");
+    // Counted by the prompts and the API, which parse what is entered before it reaches the service.
+    static final Metrics.Counter INPUT_ERRORS = Metrics.counter("tracker_input_errors_total",
+            "Entries at the prompts and API requests that could not be parsed");
+
+    private final Ledger ledger;
+    private final File file; // Null when the rows are kept in segments.
+    private final LedgerSegments segments; // Null when the rows are kept in `file`.
+    private final ReportCache cache; // Null when turned off.
+    private TransactionWriter writer; // Opened on the first write; appends to `file`.
+    private volatile TransactionTailer tailer; // Set while the file is followed.
+    private volatile boolean unsaved; // Whether rows were written to `file` since `markSaved` was last called.
+    private volatile long tailedRowsSaved; // The tailer's row count when `markSaved` was last called.
+
+    public LedgerService(Ledger ledger, File file) {
+        this(ledger, file, null);
+    }
+
+    public LedgerService(LedgerSegments segments) {
+        this(segments.getLedger(), null, segments);
+    }
+
+    private LedgerService(Ledger ledger, File file, LedgerSegments segments) {
+        this.ledger = ledger;
+        this.file = file;
+        this.segments = segments;
+        this.cache = REPORT_CACHE_ROWS > 0 ? new ReportCache(ledger, REPORT_CACHE_ROWS) : null;
+        Metrics.gauge("tracker_ledger_rows", "Transactions in the ledger", ledger::size);
+        Metrics.gauge("tracker_search_words", "Distinct words in the search index", ledger::getSearchWordCount);
+        Metrics.gauge("tracker_search_index_bytes", "Approximate heap size of the search index",
+                ledger::getSearchIndexBytes);
+        Metrics.gauge("tracker_ledger_vendors", "Distinct vendor names in the ledger",
+                () -> ledger.snapshot().getRows().getVendorCount());
+    }
+
+    public Ledger.Snapshot snapshot() { return ledger.snapshot(); }
+
+    // A snapshot with at least every transaction dated from `startDate` to `endDate` (both included).
+    public Ledger.Snapshot snapshot(LocalDate startDate, LocalDate endDate) {
+        load((int) startDate.toEpochDay(), (int) endDate.toEpochDay());
+        return ledger.snapshot();
+    }
+
+    // Adds a deposit, making the amount positive whatever its sign.
+    public Transaction addDeposit(LocalDate date, LocalTime time, String description, String vendor, Money amount)
+            throws IOException {
+        return add(new Transaction(date, time, description, vendor, amount.abs()));
+    }
+
+    // Adds a payment, making the amount negative whatever its sign.
+    public Transaction addPayment(LocalDate date, LocalTime time, String description, String vendor, Money amount)
+            throws IOException {
+        return add(new Transaction(date, time, description, vendor, amount.abs().negate()));
+    }
+
+    // Writes the transaction to the file first, so the ledger never shows a transaction that isn't saved.
+    // While the file is followed, the row reaches the ledger by being read back from it, together with
+    // any rows other programs appended before it, so the ledger keeps the rows in the order of the file.
+    public Transaction add(Transaction transaction) throws IOException {
+        checkField(transaction.getDescription());
+        checkField(transaction.getVendor());
+        Metrics.Timing timing = WRITE.start();
+        if (segments != null) {
+            segments.appendAll(List.of(transaction));
+            timing.stop(1);
+            return transaction;
+        }
+        writer().append(transaction);
+        TransactionTailer following = tailer;
+        if (following != null) {
+            following.poll();
+        } else {
+            ledger.add(transaction);
+        }
+        unsaved = true;
+        timing.stop(1);
+        return transaction;
+    }
+
+    // Adds every transaction of the file that the ledger doesn't have yet; the importer holds the counts.
+    public TransactionImporter importFile(File source, TransactionImporter.Sign sign) throws IOException {
+        Metrics.Timing timing = IMPORT.start();
+        TransactionImporter importer = new TransactionImporter(source, sign);
+        TransactionTailer following = tailer;
+        try {
+            if (segments != null) {
+                importer.importInto(ledger, segments);
+            } else {
+                importer.importInto(ledger, writer(), following == null);
+            }
+        } finally {
+            // A partial import still added the rows written before it stopped
+            if (segments == null && importer.getRowsImported() > 0) {
+                unsaved = true;
+            }
+        }
+        if (following != null) {
+            following.poll();
+        }
+        timing.stop(importer.getRowsImported());
+        return importer;
+    }
+
+    // Writes the transactions dated from `fromDay` to `toDay` (epoch days, both inclusive) to the file.
+    public TransactionExporter exportFile(File target, int fromDay, int toDay) throws IOException {
+        Metrics.Timing timing = EXPORT.start();
+        TransactionExporter exporter = new TransactionExporter(target);
+        load(fromDay, toDay);
+        exporter.export(ledger.snapshot(), fromDay, toDay);
+        timing.stop(exporter.getRowsWritten());
+        return exporter;
+    }
+
+    // Every transaction, newest first.
+    public View all() {
+        Ledger.Snapshot snapshot = loadAll();
+        return new View(snapshot, snapshot::descending, row -> true, null, null);
+    }
+
+    public View deposits() {
+        Ledger.Snapshot snapshot = loadAll();
+        TransactionStore rows = snapshot.getRows();
+        return new View(snapshot, snapshot::descending, row -> !rows.isPayment(row), null, null);
+    }
+
+    public View payments() {
+        Ledger.Snapshot snapshot = loadAll();
+        return new View(snapshot, snapshot::descending, snapshot.getRows()::isPayment, null, null);
+    }
+
+    // The transactions dated from `startDate` to `endDate` (both included), newest first, with their totals.
+    // Repeated reports are answered from the report cache until a row inside the dates is added.
+    public View between(LocalDate startDate, LocalDate endDate) {
+        int fromDay = (int) startDate.toEpochDay();
+        int toDay = (int) endDate.toEpochDay();
+        load(fromDay, toDay);
+        String key = "dates " + fromDay + " " + toDay;
+        ReportCache.Entry cached = cache != null ? cache.get(key) : null;
+        if (cached == null) {
+            Ledger.Snapshot snapshot = ledger.snapshot();
+            IntList rows = new IntList();
+            snapshot.descending(fromDay, toDay).forEachRemaining((IntConsumer) rows::add);
+            cached = ReportCache.Entry.dates(snapshot, rows.toArray(), snapshot.between(fromDay, toDay), fromDay, toDay);
+            if (cache != null) {
+                cache.put(key, cached);
+            }
+        }
+        return new View(cached);
+    }
+
+    // The transactions of the vendor, ignoring case, newest first. If there is no vendor by that exact name,
+    // the vendors starting with it, or else the ones spelled similarly to it, are used instead;
+    // `View.getVendors` tells which. The view is empty if nothing matches at all.
+    // Repeated lookups are answered from the report cache until a row of the vendors is added.
+    public View byVendor(String vendor) {
+        Ledger.Snapshot snapshot = loadAll();
+        String key = "vendor " + vendor;
+        ReportCache.Entry cached = cache != null ? cache.get(key) : null;
+        if (cached != null) {
+            return new View(cached);
+        }
+        List<String> vendorNames = List.of(vendor);
+        IntList matches = snapshot.findVendor(vendor);
+        boolean exact = !matches.isEmpty();
+        if (!exact) {
+            vendorNames = snapshot.findVendorsByPrefix(vendor);
+            if (vendorNames.isEmpty()) {
+                vendorNames = snapshot.findSimilarVendors(vendor);
+            }
+            matches = snapshot.rowsOfVendors(vendorNames);
+        }
+
+        Rollups.Totals totals = snapshot.ofVendors(vendorNames);
+
+        if (matches.size() > snapshot.size() / BIG_REPORT_SHARE) {
+            // A vendor with this many rows is met often enough walking the ledger in order that the first rows
+            // come at once, where sorting would have to order every one of its rows before showing any.
+            // Such a view is as quick to make again as to cache, so it isn't cached.
+            TransactionStore store = snapshot.getRows();
+            boolean[] matched = new boolean[store.getVendorCount()];
+            for (int i = 0; i < matches.size(); i++) {
+                matched[store.getVendorId(matches.get(i))] = true;
+            }
+            return new View(snapshot, snapshot::descending, row -> matched[store.getVendorId(row)], vendorNames, totals);
+        }
+
+        cached = ReportCache.Entry.vendors(snapshot, newestFirst(snapshot, matches), totals, vendorNames, exact);
+        if (cache != null) {
+            cache.put(key, cached);
+        }
+        return new View(cached);
+    }
+
+    // The transactions whose description or vendor matches the query (see SearchIndex.Query), newest first,
+    // with their totals.
+    public View search(String query) {
+        return search(SearchIndex.Query.parse(query), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // The same, only the transactions dated from `startDate` to `endDate` (both included).
+    public View search(String query, LocalDate startDate, LocalDate endDate) {
+        return search(SearchIndex.Query.parse(query), (int) startDate.toEpochDay(), (int) endDate.toEpochDay());
+    }
+
+    // Repeated searches are answered from the report cache until a row inside the dates is added.
+    private View search(SearchIndex.Query query, int fromDay, int toDay) {
+        Metrics.Timing timing = SEARCH.start();
+        Ledger.Snapshot snapshot;
+        if (fromDay == Integer.MIN_VALUE && toDay == Integer.MAX_VALUE) {
+            snapshot = loadAll();
+        } else {
+            load(fromDay, toDay);
+            snapshot = ledger.snapshot();
+        }
+        String key = "search " + fromDay + " " + toDay + " " + query;
+        ReportCache.Entry cached = cache != null ? cache.get(key) : null;
+        if (cached != null) {
+            timing.stop(cached.rows.length);
+            return new View(cached);
+        }
+        IntList matches = snapshot.search(query, fromDay, toDay);
+        TransactionStore store = snapshot.getRows();
+        Rollups.Totals totals = new Rollups.Totals();
+        for (int i = 0; i < matches.size(); i++) {
+            totals.add(store.getCents(matches.get(i)));
+        }
+        totals.setRows(snapshot.size());
+        timing.stop(matches.size());
+
+        if (matches.size() > snapshot.size() / BIG_REPORT_SHARE) {
+            // As with big vendors, walking the dates in order shows the first rows at once
+            long[] matched = new long[(snapshot.size() + 63) >>> 6];
+            for (int i = 0; i < matches.size(); i++) {
+                int row = matches.get(i);
+                matched[row >>> 6] |= 1L << row;
+            }
+            return new View(snapshot, () -> snapshot.descending(fromDay, toDay),
+                    row -> (matched[row >>> 6] & 1L << row) != 0, null, totals);
+        }
+        // A new row in the dates may match, so the entry goes the way of a date range report's
+        cached = ReportCache.Entry.dates(snapshot, newestFirst(snapshot, matches), totals, fromDay, toDay);
+        if (cache != null) {
+            cache.put(key, cached);
+        }
+        return new View(cached);
+    }
+
+    // Group-by reports over every transaction (see Analytics).
+    public Analytics analytics() {
+        return new Analytics(loadAll());
+    }
+
+    // The deposits and payments of every transaction up to and including the date.
+    public Rollups.Totals balanceAsOf(LocalDate date) {
+        if (segments != null) {
+            try {
+                return segments.balanceAsOf((int) date.toEpochDay());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return ledger.snapshot().asOf((int) date.toEpochDay());
+    }
+
+    public Rollups.Totals totalsBetween(LocalDate startDate, LocalDate endDate) {
+        return snapshot(startDate, endDate).between((int) startDate.toEpochDay(), (int) endDate.toEpochDay());
+    }
+
+    // Follows the file from `offset` on, adding the rows other programs append to it (see TransactionTailer).
+    // `offset` is where the rows in the ledger end in the file.
+    public synchronized void follow(long offset) throws IOException {
+        if (tailer == null) {
+            TransactionTailer following = new TransactionTailer(file, ledger, offset, () -> {
+                // Writes go to the file that replaced it from now on
+                try {
+                    closeWriter();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            tailedRowsSaved = 0;
+            tailer = following;
+            following.start();
+        }
+    }
+
+    // How much of the file the ledger holds: up to where the tailer has read while the file is followed,
+    // or else all of it.
+    public long getFileOffset() {
+        TransactionTailer following = tailer;
+        return following != null ? following.getOffset() : file.length();
+    }
+
+    // Whether the file followed was truncated or replaced while the ledger held rows of the old content,
+    // in which case a snapshot of the ledger would not match the file it names.
+    public boolean wasFileReset() {
+        TransactionTailer following = tailer;
+        return following != null && following.getResets() > 0;
+    }
+
+    public boolean hasUnsavedRows() {
+        TransactionTailer following = tailer;
+        return unsaved || following != null && following.getRowsAdded() != tailedRowsSaved;
+    }
+
+    // Called once the ledger was saved in a snapshot.
+    public void markSaved() {
+        TransactionTailer following = tailer;
+        tailedRowsSaved = following != null ? following.getRowsAdded() : 0;
+        unsaved = false;
+    }
+
+    // Stops following the file in the background and closes it; a later write opens it again.
+    public void close() throws IOException {
+        // Not under the lock: the tailer may be waiting for it to close the writer of a rotated file
+        TransactionTailer following = tailer;
+        if (following != null) {
+            following.close();
+        }
+        closeWriter();
+        if (segments != null) {
+            segments.close();
+        }
+    }
+
+    // Loads the months of the dates from `fromDay` to `toDay` when the rows are kept in segments.
+    // A segment that can't be read fails the query with an UncheckedIOException.
+    private void load(int fromDay, int toDay) {
+        if (segments != null) {
+            try {
+                segments.load(fromDay, toDay);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Ledger.Snapshot loadAll() {
+        if (segments != null) {
+            try {
+                segments.loadAll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return ledger.snapshot();
+    }
+
+    private synchronized void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    // The indexes list rows in the order they were added, so put the rows in ledger order, newest first.
+    private static int[] newestFirst(Ledger.Snapshot snapshot, IntList matches) {
+        int[] rows = matches.toArray();
+        snapshot.sort(rows);
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int swap = rows[i];
+            rows[i] = rows[j];
+            rows[j] = swap;
+        }
+        return rows;
+    }
+
+    // A '|' or a line break would split the record in the file.
+    private static void checkField(String value) {
+        if (value.indexOf('|') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Descriptions and vendors can't contain '|' or line breaks: " + value);
+        }
+    }
+
+    private synchronized TransactionWriter writer() throws IOException {
+        if (writer == null) {
+            writer = TransactionWriter.open(file);
+        }
+        return writer;
+    }
+
+    // The rows of one query, taken over one snapshot of the ledger.
+    public static class View {
+        private final Ledger.Snapshot snapshot;
+        private final Supplier<PrimitiveIterator.OfInt> order;
+        private final IntPredicate shown;
+        private final List<String> vendors;
+        private final Rollups.Totals totals;
+
+        View(Ledger.Snapshot snapshot, Supplier<PrimitiveIterator.OfInt> order, IntPredicate shown, List<String> vendors,
+             Rollups.Totals totals) {
+            this.snapshot = snapshot;
+            this.order = order;
+            this.shown = shown;
+            this.vendors = vendors;
+            this.totals = totals;
+        }
+
+        View(ReportCache.Entry report) {
+            this(report.snapshot, () -> Arrays.stream(report.rows).iterator(), row -> true, report.vendors, report.totals);
+        }
+
+        public Ledger.Snapshot getSnapshot() { return snapshot; }
+
+        public TransactionStore getRows() { return snapshot.getRows(); }
+
+        // The vendor names a vendor query matched, or null for the other views.
+        public List<String> getVendors() { return vendors; }
+
+        // The totals of the rows of a date range or vendor report, or null for the other views.
+        public Rollups.Totals getTotals() { return totals; }
+
+        // A new pass over the row indexes of the view, in order; every call starts from the first row.
+        public PrimitiveIterator.OfInt iterator() {
+            PrimitiveIterator.OfInt rows = order.get();
+            return new PrimitiveIterator.OfInt() {
+                private int next = advance();
+
+                @Override
+                public boolean hasNext() { return next >= 0; }
+
+                @Override
+                public int nextInt() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    int row = next;
+                    next = advance();
+                    return row;
+                }
+
+                private int advance() {
+                    while (rows.hasNext()) {
+                        int row = rows.nextInt();
+                        if (shown.test(row)) {
+                            return row;
+                        }
+                    }
+                    return -1;
+                }
+            };
+        }
+
+        public boolean isEmpty() { return !iterator().hasNext(); }
+    }
+}
@@ -0,0 +1,303 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// The tracker's own metrics: counters, gauges and latency histograms, registered by name once and then updated
+// from any thread without locks. They can be printed as text (the M menu option) or in the Prometheus text format
+// (GET /metrics on the API, or the file named by "tracker.metricsFile" on exit).
+//
+// An `Operation` is a histogram of durations plus a row counter. Every timed operation is also committed as a
+// "com.pluralsight.Operation" JFR event, which costs next to nothing unless a recording is running, e.g.
+//   java -XX:StartFlightRecording:filename=tracker.jfr -cp target/classes com.pluralsight.FinancialTracker
+public class Metrics {
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return register(name, new Counter(name, help), Counter.class);
+    }
+
+    // A gauge reads its value when the metrics are printed. Registering a name again replaces its supplier.
+    public static Gauge gauge(String name, String help, LongSupplier value) {
+        Gauge gauge = new Gauge(name, help, value);
+        REGISTRY.put(name, gauge);
+        return gauge;
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return register(name, new Histogram(name, help), Histogram.class);
+    }
+
+    // Registers "tracker_<name>_seconds" and "tracker_<name>_rows_total".
+    public static Operation operation(String name, String help) {
+        return new Operation(name, histogram("tracker_" + name + "_seconds", help),
+                counter("tracker_" + name + "_rows_total", "Rows handled by " + name));
+    }
+
+    private static <T extends Metric> T register(String name, T metric, Class<T> type) {
+        Metric existing = REGISTRY.putIfAbsent(name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException(name + " is already registered as another kind of metric");
+        }
+        return type.cast(existing);
+    }
+
+    // One line per metric, durations in milliseconds.
+    public static void printText(PrintStream out) {
+        for (Metric metric : REGISTRY.values()) {
+            out.println(metric.text());
+        }
+    }
+
+    public static void writePrometheus(Writer out) throws IOException {
+        StringBuilder text = new StringBuilder(4096);
+        for (Metric metric : REGISTRY.values()) {
+            text.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            text.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+            metric.appendPrometheus(text);
+        }
+        out.write(text.toString());
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract String text();
+
+        abstract void appendPrometheus(StringBuilder out);
+    }
+
+    public static class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() { value.increment(); }
+
+        public void add(long amount) { value.add(amount); }
+
+        public long get() { return value.sum(); }
+
+        @Override
+        String type() { return "counter"; }
+
+        @Override
+        String text() { return String.format("%-40s %d", name, get()); }
+
+        @Override
+        void appendPrometheus(StringBuilder out) {
+            out.append(name).append(' ').append(get()).append('\n');
+        }
+    }
+
+    public static class Gauge extends Metric {
+        private final LongSupplier value;
+
+        Gauge(String name, String help, LongSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        public long get() { return value.getAsLong(); }
+
+        @Override
+        String type() { return "gauge"; }
+
+        @Override
+        String text() { return String.format("%-40s %d", name, get()); }
+
+        @Override
+        void appendPrometheus(StringBuilder out) {
+            out.append(name).append(' ').append(get()).append('\n');
+        }
+    }
+
+    // Durations in nanoseconds, counted in HDR-style buckets: exact below 64 ns, then 32 buckets per power of two,
+    // so any percentile is within about 3% of the true value. Recording is one atomic increment per value
+    // plus the count, sum and maximum; nothing is ever locked or allocated.
+    public static class Histogram extends Metric {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String help) {
+            super(name, help);
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            counts.incrementAndGet(bucket(value));
+            count.increment();
+            sum.add(value);
+            long highest = max.get();
+            while (value > highest && !max.compareAndSet(highest, value)) {
+                highest = max.get();
+            }
+        }
+
+        public long getCount() { return count.sum(); }
+
+        public long getSumNanos() { return sum.sum(); }
+
+        public long getMaxNanos() { return max.get(); }
+
+        // The smallest recorded value that at least `quantile` of the values are at or below, rounded to its bucket.
+        public long getValueAtQuantile(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            return valueAt(snapshot, total, quantile);
+        }
+
+        private long valueAt(long[] snapshot, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(highestIn(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        static int bucket(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return SUB_BUCKETS * shift + (int) (value >>> shift);
+        }
+
+        // The largest value that falls in the bucket.
+        static long highestIn(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long subBucket = bucket - (long) SUB_BUCKETS * shift;
+            return ((subBucket + 1) << shift) - 1;
+        }
+
+        @Override
+        String type() { return "summary"; }
+
+        @Override
+        String text() {
+            long total = getCount();
+            return String.format(Locale.ROOT, "%-40s count %d, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    name, total, total == 0 ? 0 : getSumNanos() / 1e6 / total, getValueAtQuantile(0.5) / 1e6,
+                    getValueAtQuantile(0.9) / 1e6, getValueAtQuantile(0.99) / 1e6, getMaxNanos() / 1e6);
+        }
+
+        @Override
+        void appendPrometheus(StringBuilder out) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(valueAt(snapshot, total, quantile) / 1e9).append('\n');
+            }
+            out.append(name).append("_sum ").append(getSumNanos() / 1e9).append('\n');
+            out.append(name).append("_count ").append(total).append('\n');
+        }
+    }
+
+    // Something the tracker does now and then, like loading the ledger or printing a report.
+    public static class Operation {
+        private final String name;
+        private final Histogram latency;
+        private final Counter rows;
+
+        Operation(String name, Histogram latency, Counter rows) {
+            this.name = name;
+            this.latency = latency;
+            this.rows = rows;
+        }
+
+        public Timing start() { return new Timing(this); }
+
+        public Histogram getLatency() { return latency; }
+    }
+
+    // One run of an operation; `stop` records how long it took.
+    public static class Timing {
+        private final Operation operation;
+        private final long start = System.nanoTime();
+        private final OperationEvent event = new OperationEvent();
+
+        Timing(Operation operation) {
+            this.operation = operation;
+            event.begin();
+        }
+
+        public void stop(long rows) {
+            operation.latency.record(System.nanoTime() - start);
+            operation.rows.add(rows);
+            if (event.shouldCommit()) {
+                event.operation = operation.name;
+                event.rows = rows;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("com.pluralsight.Operation")
+    @Label("Ledger Operation")
+    @Description("A timed operation of the Financial Tracker, such as loading the ledger or printing a report")
+    @Category("Financial Tracker")
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Rows")
+        long rows;
+    }
+}
@@ -0,0 +1,191 @@
+package com.pluralsight;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+// An amount of money as a whole number of cents, plus how many decimals it was written with (0, 1 or 2),
+// so "500", "12.5" and "-89.50" all print back exactly as they were entered. Immutable.
+//
+// Arithmetic is exact and throws ArithmeticException instead of overflowing. The static `parseCents` and
+// `appendTo` methods work on the raw text and cents without creating a Money, for loops over millions of rows.
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0, 2);
+
+    private final long cents;
+    private final int scale;
+
+    private Money(long cents, int scale) {
+        this.cents = cents;
+        this.scale = scale;
+    }
+
+    public static Money ofCents(long cents) {
+        return new Money(cents, 2);
+    }
+
+    // `scale` is the number of decimals to print; the cents must not need more than that.
+    public static Money ofCents(long cents, int scale) {
+        if (scale < 0 || scale > 2 || cents % pow10(2 - scale) != 0) {
+            throw new ArithmeticException(cents + " cents can't be written with " + scale + " decimals");
+        }
+        return new Money(cents, scale);
+    }
+
+    // Converts exactly, keeping the decimals; throws ArithmeticException for more than two, as `parse` would.
+    public static Money of(BigDecimal amount) {
+        if (amount.scale() > 2) {
+            throw new ArithmeticException(amount + " has more than two decimals");
+        }
+        long cents = amount.setScale(2).movePointRight(2).longValueExact();
+        return new Money(cents, Math.max(0, amount.scale()));
+    }
+
+    // Parses an optional minus sign, digits, then an optional point followed by one or two digits.
+    public static Money parse(CharSequence text) {
+        String trimmed = text.toString().trim();
+        byte[] bytes = new byte[trimmed.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = trimmed.charAt(i);
+            bytes[i] = c < 128 ? (byte) c : (byte) '?';
+        }
+        return new Money(parseCents(bytes, 0, bytes.length), parseScale(bytes, 0, bytes.length));
+    }
+
+    // The cents of the amount written in text[from, to), in the format `parse` accepts.
+    // Throws NumberFormatException if the text is not an amount, ArithmeticException if it is too large.
+    // Only text that `appendTo` writes back byte for byte is an amount, so a row is saved exactly as it was read:
+    // no plus sign, leading zero, trailing point or minus zero, and no fractions of a cent, which the ledger can't hold.
+    public static long parseCents(byte[] text, int from, int to) {
+        int i = from;
+        boolean negative = i < to && text[i] == '-';
+        if (negative) {
+            i++;
+        }
+        int unitsFrom = i;
+        long units = 0;
+        while (i < to && text[i] != '.') {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(text, i++, from, to));
+        }
+        if (i == unitsFrom || (i - unitsFrom > 1 && text[unitsFrom] == '0')) {
+            throw notAnAmount(text, from, to);
+        }
+        int scale = 0;
+        long fraction = 0;
+        if (i < to) {
+            i++; // Skip the point.
+            if (i == to || to - i > 2) {
+                throw notAnAmount(text, from, to);
+            }
+            while (i < to) {
+                fraction = fraction * 10 + digit(text, i++, from, to);
+                scale++;
+            }
+        }
+        for (int s = scale; s < 2; s++) {
+            fraction *= 10;
+        }
+        long cents = Math.addExact(Math.multiplyExact(units, 100), fraction);
+        if (negative && cents == 0) {
+            throw notAnAmount(text, from, to);
+        }
+        return negative ? -cents : cents;
+    }
+
+    // How many decimals the amount in text[from, to) is written with.
+    // Only meaningful once `parseCents` accepted it.
+    public static int parseScale(byte[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] == '.') {
+                return to - i - 1;
+            }
+        }
+        return 0;
+    }
+
+    private static NumberFormatException notAnAmount(byte[] text, int from, int to) {
+        return new NumberFormatException("Not an amount: \"" + new String(text, from, to - from, StandardCharsets.US_ASCII)
+                + "\" (expected digits with up to two decimals, such as 12.50)");
+    }
+
+    private static int digit(byte[] text, int i, int from, int to) {
+        int digit = text[i] - '0';
+        if (digit < 0 || digit > 9) {
+            throw notAnAmount(text, from, to);
+        }
+        return digit;
+    }
+
+    public long getCents() { return cents; }
+
+    public int getScale() { return scale; }
+
+    public int signum() { return Long.signum(cents); }
+
+    public boolean isNegative() { return cents < 0; }
+
+    // Results keep the larger number of decimals of the two amounts.
+    public Money plus(Money other) {
+        return new Money(Math.addExact(cents, other.cents), Math.max(scale, other.scale));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(cents, other.cents), Math.max(scale, other.scale));
+    }
+
+    public Money negate() {
+        return cents == 0 ? this : new Money(Math.negateExact(cents), scale);
+    }
+
+    public Money abs() {
+        return cents < 0 ? negate() : this;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2).setScale(scale);
+    }
+
+    // Appends the amount with `scale` decimals, the same text as BigDecimal.toPlainString(), without allocating.
+    public static void appendTo(StringBuilder out, long cents, int scale) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        long magnitude = Math.abs(cents);
+        out.append(magnitude / 100);
+        if (scale > 0) {
+            out.append('.');
+            long fraction = magnitude % 100;
+            out.append((char) ('0' + fraction / 10));
+            if (scale == 2) {
+                out.append((char) ('0' + fraction % 10));
+            }
+        }
+    }
+
+    private static long pow10(int exponent) {
+        return exponent == 0 ? 1 : exponent == 1 ? 10 : 100;
+    }
+
+    // Orders by value only, so 5 and 5.00 compare as equal.
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    // Like BigDecimal, 5 and 5.00 are different values because they print differently.
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents && ((Money) other).scale == scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents) * 31 + scale;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(24);
+        appendTo(text, cents, scale);
+        return text.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+// The rows and totals of recent date range and vendor reports, so asking for the same report again
+// (Month To Date, the same vendor) costs a map lookup instead of another pass over the ledger.
+//
+// Entries are kept least recently used first and evicted once they hold more than `capacity` row numbers in all.
+// The cache listens to the ledger, and a batch of new rows, from a single write, an import, the tailer or a month
+// loaded from its segment, drops exactly the entries it changes: date reports with one of its dates in their range,
+// and vendor reports of one of its vendors (or, for a vendor report that had no exact match, any new vendor name).
+// A cached entry may come from an older snapshot than the newest one; its rows are still the answer.
+class ReportCache implements Ledger.Listener {
+    private static final Metrics.Counter HITS = Metrics.counter("tracker_report_cache_hits_total",
+            "Reports answered from the report cache");
+    private static final Metrics.Counter MISSES = Metrics.counter("tracker_report_cache_misses_total",
+            "Reports that had to be computed");
+    private static final Metrics.Counter EVICTIONS = Metrics.counter("tracker_report_cache_evictions_total",
+            "Reports dropped from the cache to make room");
+    private static final Metrics.Counter INVALIDATIONS = Metrics.counter("tracker_report_cache_invalidations_total",
+            "Reports dropped from the cache because new rows changed them");
+
+    private final Ledger ledger;
+    private final long capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rowsHeld;
+    private String[] vendorKeys = new String[16]; // Normalized vendor names by vendor id, filled in as they are met.
+
+    ReportCache(Ledger ledger, long capacity) {
+        this.ledger = ledger;
+        this.capacity = capacity;
+        ledger.addListener(this);
+        Metrics.gauge("tracker_report_cache_rows", "Row numbers held by the report cache", this::getRowsHeld);
+    }
+
+    synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            MISSES.increment();
+        } else {
+            HITS.increment();
+        }
+        return entry;
+    }
+
+    // Caches the entry, unless rows were added since its snapshot was taken: the batch that added them
+    // may have been checked against the cache before the entry was in it.
+    synchronized void put(String key, Entry entry) {
+        if (ledger.snapshot() != entry.snapshot || weight(entry) > capacity) {
+            return;
+        }
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            rowsHeld -= weight(replaced);
+        }
+        rowsHeld += weight(entry);
+        Iterator<Entry> leastRecent = entries.values().iterator();
+        while (rowsHeld > capacity) {
+            rowsHeld -= weight(leastRecent.next());
+            leastRecent.remove();
+            EVICTIONS.increment();
+        }
+    }
+
+    synchronized long getRowsHeld() { return rowsHeld; }
+
+    @Override
+    public synchronized void rowsAdded(Ledger.Snapshot snapshot, int fromRow, int toRow) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        TransactionStore rows = snapshot.getRows();
+        int[] days = new int[toRow - fromRow];
+        Set<String> vendors = new HashSet<>();
+        int newestVendor = -1;
+        for (int row = fromRow; row < toRow; row++) {
+            days[row - fromRow] = rows.getEpochDay(row);
+            int vendorId = rows.getVendorId(row);
+            vendors.add(vendorKey(rows, vendorId));
+            newestVendor = Math.max(newestVendor, vendorId);
+        }
+        Arrays.sort(days);
+
+        Iterator<Entry> cached = entries.values().iterator();
+        while (cached.hasNext()) {
+            Entry entry = cached.next();
+            if (entry.changedBy(days, vendors, newestVendor)) {
+                rowsHeld -= weight(entry);
+                cached.remove();
+                INVALIDATIONS.increment();
+            }
+        }
+    }
+
+    private String vendorKey(TransactionStore rows, int vendorId) {
+        if (vendorId >= vendorKeys.length) {
+            vendorKeys = Arrays.copyOf(vendorKeys, Math.max(vendorId + 1, vendorKeys.length * 2));
+        }
+        if (vendorKeys[vendorId] == null) {
+            vendorKeys[vendorId] = VendorIndex.normalize(rows.getVendorName(vendorId));
+        }
+        return vendorKeys[vendorId];
+    }
+
+    // An empty report still takes a slot.
+    private static long weight(Entry entry) {
+        return Math.max(entry.rows.length, 1);
+    }
+
+    // One computed report: its rows in report order, its totals, and what new rows would change it.
+    static class Entry {
+        final Ledger.Snapshot snapshot;
+        final int[] rows;
+        final Rollups.Totals totals;
+        final List<String> vendors; // The vendor names a vendor report matched; null for date reports.
+        private final int fromDay;
+        private final int toDay;
+        private final Set<String> vendorKeys;
+        private final boolean exactVendor;
+        private final int vendorCount; // Vendor ids at or past this are new since the snapshot.
+
+        private Entry(Ledger.Snapshot snapshot, int[] rows, Rollups.Totals totals, List<String> vendors,
+                      int fromDay, int toDay, boolean exactVendor) {
+            this.snapshot = snapshot;
+            this.rows = rows;
+            this.totals = totals;
+            this.vendors = vendors;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.exactVendor = exactVendor;
+            this.vendorCount = snapshot.getRows().getVendorCount();
+            this.vendorKeys = new HashSet<>();
+            if (vendors != null) {
+                for (String vendor : vendors) {
+                    vendorKeys.add(VendorIndex.normalize(vendor));
+                }
+            }
+        }
+
+        // The rows dated from `fromDay` to `toDay` (epoch days, both inclusive).
+        static Entry dates(Ledger.Snapshot snapshot, int[] rows, Rollups.Totals totals, int fromDay, int toDay) {
+            return new Entry(snapshot, rows, totals, null, fromDay, toDay, false);
+        }
+
+        // The rows of the vendors; `exact` tells whether they are the name asked for rather than near matches.
+        static Entry vendors(Ledger.Snapshot snapshot, int[] rows, Rollups.Totals totals, List<String> vendors,
+                             boolean exact) {
+            return new Entry(snapshot, rows, totals, vendors, 0, -1, exact);
+        }
+
+        // `days` holds the dates of the new rows, sorted, and `vendors` their normalized vendor names.
+        boolean changedBy(int[] days, Set<String> vendors, int newestVendor) {
+            if (this.vendors == null) {
+                int at = Arrays.binarySearch(days, fromDay);
+                int next = at >= 0 ? at : -at - 1;
+                return next < days.length && days[next] <= toDay;
+            }
+            if (!exactVendor && newestVendor >= vendorCount) {
+                return true; // A new name may be a closer match
+            }
+            for (String key : vendorKeys) {
+                if (vendors.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+// Running totals of the ledger, kept up to date as rows are added so reports never have to rescan the rows.
+// Deposits, payments and their counts are kept per day in Fenwick trees (binary indexed trees) over epoch days:
+// adding a row and summing any range of days, including everything up to a day, both take O(log days).
+// Totals per vendor (compared the same way as `VendorIndex`) are kept in a map.
+//
+// One thread adds rows while other threads query. Adding takes the write lock of a `StampedLock`; queries read
+// optimistically without locking and only take the read lock if a row was added while they were reading.
+// Every result says how many rows it covers (`Totals.getRows()`), so a caller holding an older or newer
+// snapshot of the ledger can correct it for the rows in between.
+public class Rollups {
+    private static final int MARGIN_DAYS = 366 * 5; // Room left on each side so a new date rarely forces a rebuild.
+
+    private final TransactionStore store;
+    private final StampedLock lock = new StampedLock();
+    private Trees trees = new Trees(0, 0);
+    private Totals[] totalsByVendorId = new Totals[16];
+    private int size;
+
+    public Rollups(TransactionStore store) {
+        this.store = store;
+    }
+
+    // Adds every row of the store that is not counted yet. When many rows are new the trees are rebuilt
+    // in one pass over the rows, which is cheaper than adding them one at a time.
+    public void addNewRows() {
+        long stamp = lock.writeLock();
+        try {
+            if (store.size() - size > size) {
+                rebuild(store.size());
+            } else {
+                for (int row = size; row < store.size(); row++) {
+                    addRow(row);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void add(int row) {
+        long stamp = lock.writeLock();
+        try {
+            addRow(row);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addRow(int row) {
+        Trees trees = this.trees;
+        int epochDay = store.getEpochDay(row);
+        if (trees.days == 0 || epochDay < trees.firstDay || epochDay >= trees.firstDay + trees.days) {
+            rebuild(row + 1);
+            return;
+        }
+        long cents = store.getCents(row);
+        // Every node of a tree holds a sum of amounts of the same sign, so none can overflow unless the sum
+        // over all days does. Checking that first leaves the trees untouched when a row would overflow them.
+        Math.addExact(prefix(cents < 0 ? trees.paymentCents : trees.depositCents, trees.days), cents);
+        for (int i = epochDay - trees.firstDay + 1; i <= trees.days; i += i & -i) {
+            if (cents < 0) {
+                trees.paymentCents[i] = Math.addExact(trees.paymentCents[i], cents);
+                trees.paymentCount[i]++;
+            } else {
+                trees.depositCents[i] = Math.addExact(trees.depositCents[i], cents);
+                trees.depositCount[i]++;
+            }
+        }
+        vendorTotals(row).add(cents);
+        size++;
+    }
+
+    // Totals of the rows dated from `fromDay` to `toDay` (epoch days, both inclusive).
+    public Totals between(int fromDay, int toDay) {
+        long stamp = lock.tryOptimisticRead();
+        Totals totals = sumBetween(fromDay, toDay);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                totals = sumBetween(fromDay, toDay);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return totals;
+    }
+
+    // Totals of every row dated on or before the given day; its net amount is the balance as of that day.
+    public Totals asOf(int epochDay) {
+        return between(Integer.MIN_VALUE, epochDay);
+    }
+
+    // Combined totals of the given vendors, ignoring case.
+    public Totals ofVendors(List<String> vendors) {
+        long stamp = lock.tryOptimisticRead();
+        Totals totals = sumVendors(vendors);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                totals = sumVendors(vendors);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return totals;
+    }
+
+    // Only reads `trees` once, so the bounds and the arrays always belong together even while a rebuild replaces them.
+    private Totals sumBetween(int fromDay, int toDay) {
+        Trees trees = this.trees;
+        Totals totals = new Totals();
+        totals.rows = size;
+        if (fromDay > toDay) {
+            return totals;
+        }
+        int to = Math.min(toDay, trees.firstDay + trees.days - 1) - trees.firstDay + 1;
+        int from = Math.max(fromDay, trees.firstDay) - trees.firstDay;
+        if (to <= 0 || from >= trees.days) {
+            return totals;
+        }
+        totals.depositCents = Math.subtractExact(prefix(trees.depositCents, to), prefix(trees.depositCents, from));
+        totals.paymentCents = Math.subtractExact(prefix(trees.paymentCents, to), prefix(trees.paymentCents, from));
+        totals.depositCount = prefix(trees.depositCount, to) - prefix(trees.depositCount, from);
+        totals.paymentCount = prefix(trees.paymentCount, to) - prefix(trees.paymentCount, from);
+        return totals;
+    }
+
+    private Totals sumVendors(List<String> vendors) {
+        Trees trees = this.trees;
+        Totals totals = new Totals();
+        totals.rows = size;
+        for (String vendor : vendors) {
+            Totals vendorTotal = trees.vendorTotals.get(VendorIndex.normalize(vendor));
+            if (vendorTotal != null) {
+                totals.add(vendorTotal);
+            }
+        }
+        return totals;
+    }
+
+    private static long prefix(long[] tree, int i) {
+        long sum = 0;
+        for (; i > 0; i -= i & -i) {
+            sum = Math.addExact(sum, tree[i]);
+        }
+        return sum;
+    }
+
+    private Totals vendorTotals(int row) {
+        int vendorId = store.getVendorId(row);
+        if (vendorId >= totalsByVendorId.length) {
+            totalsByVendorId = Arrays.copyOf(totalsByVendorId, Math.max(vendorId + 1, totalsByVendorId.length * 2));
+        }
+        Totals totals = totalsByVendorId[vendorId];
+        if (totals == null) {
+            totals = trees.vendorTotals.computeIfAbsent(VendorIndex.normalize(store.getVendorName(vendorId)), key -> new Totals());
+            totalsByVendorId[vendorId] = totals;
+        }
+        return totals;
+    }
+
+    // Recounts the first `rows` rows in one pass: the per-day values are summed first and then turned into
+    // Fenwick trees in place in O(days). Called with the write lock held.
+    // The totals over all rows are checked first (see addRow), so the trees are only replaced if no sum overflows.
+    private void rebuild(int rows) {
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        long depositCents = 0;
+        long paymentCents = 0;
+        for (int row = 0; row < rows; row++) {
+            minDay = Math.min(minDay, store.getEpochDay(row));
+            maxDay = Math.max(maxDay, store.getEpochDay(row));
+            long cents = store.getCents(row);
+            if (cents < 0) {
+                paymentCents = Math.addExact(paymentCents, cents);
+            } else {
+                depositCents = Math.addExact(depositCents, cents);
+            }
+        }
+        Trees trees = new Trees(minDay - MARGIN_DAYS, maxDay - minDay + 1 + 2 * MARGIN_DAYS);
+        this.trees = trees;
+        Arrays.fill(totalsByVendorId, null);
+
+        for (int row = 0; row < rows; row++) {
+            int i = store.getEpochDay(row) - trees.firstDay + 1;
+            long cents = store.getCents(row);
+            if (cents < 0) {
+                trees.paymentCents[i] = Math.addExact(trees.paymentCents[i], cents);
+                trees.paymentCount[i]++;
+            } else {
+                trees.depositCents[i] = Math.addExact(trees.depositCents[i], cents);
+                trees.depositCount[i]++;
+            }
+            vendorTotals(row).add(cents);
+        }
+        for (long[] tree : new long[][]{trees.depositCents, trees.paymentCents, trees.depositCount, trees.paymentCount}) {
+            for (int i = 1; i <= trees.days; i++) {
+                int parent = i + (i & -i);
+                if (parent <= trees.days) {
+                    tree[parent] = Math.addExact(tree[parent], tree[i]);
+                }
+            }
+        }
+        size = rows;
+    }
+
+    // The trees, the days they cover and the vendor totals, replaced as a whole by a rebuild.
+    private static class Trees {
+        final int firstDay;
+        final int days; // Number of days covered by the trees, starting at firstDay.
+        final long[] depositCents;
+        final long[] paymentCents;
+        final long[] depositCount;
+        final long[] paymentCount;
+        final ConcurrentHashMap<String, Totals> vendorTotals = new ConcurrentHashMap<>();
+
+        Trees(int firstDay, int days) {
+            this.firstDay = firstDay;
+            this.days = days;
+            depositCents = new long[days + 1];
+            paymentCents = new long[days + 1];
+            depositCount = new long[days + 1];
+            paymentCount = new long[days + 1];
+        }
+    }
+
+    // Sums of deposits and payments (in cents) and how many of each. The sums are overflow-checked like Money.
+    public static class Totals {
+        private long depositCents;
+        private long paymentCents;
+        private long depositCount;
+        private long paymentCount;
+        private int rows; // How many rows of the ledger these totals were taken over.
+
+        Totals() {
+        }
+
+        Totals(long depositCents, long depositCount, long paymentCents, long paymentCount) {
+            this.depositCents = depositCents;
+            this.depositCount = depositCount;
+            this.paymentCents = paymentCents;
+            this.paymentCount = paymentCount;
+        }
+
+        void add(long cents) {
+            if (cents < 0) {
+                paymentCents = Math.addExact(paymentCents, cents);
+                paymentCount++;
+            } else {
+                depositCents = Math.addExact(depositCents, cents);
+                depositCount++;
+            }
+        }
+
+        void add(Totals other) {
+            depositCents = Math.addExact(depositCents, other.depositCents);
+            depositCount += other.depositCount;
+            paymentCents = Math.addExact(paymentCents, other.paymentCents);
+            paymentCount += other.paymentCount;
+        }
+
+        void remove(long cents) {
+            if (cents < 0) {
+                paymentCents = Math.subtractExact(paymentCents, cents);
+                paymentCount--;
+            } else {
+                depositCents = Math.subtractExact(depositCents, cents);
+                depositCount--;
+            }
+        }
+
+        public long getDepositCents() { return depositCents; }
+
+        public long getPaymentCents() { return paymentCents; }
+
+        public long getNetCents() { return Math.addExact(depositCents, paymentCents); }
+
+        public Money getDeposits() { return Money.ofCents(depositCents); }
+
+        public Money getPayments() { return Money.ofCents(paymentCents); }
+
+        public Money getNet() { return Money.ofCents(getNetCents()); }
+
+        public long getDepositCount() { return depositCount; }
+
+        public long getPaymentCount() { return paymentCount; }
+
+        public long getCount() { return depositCount + paymentCount; }
+
+        public int getRows() { return rows; }
+
+        void setRows(int rows) { this.rows = rows; }
+
+        @Override
+        public String toString() {
+            return "Deposits: " + getDeposits() + " (" + depositCount + ")"
+                    + " | Payments: " + getPayments() + " (" + paymentCount + ")"
+                    + " | Net: " + getNet();
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// Full-text index over the descriptions and vendors: maps every word, compared without case, to the rows
+// whose description or vendor has it. Words are runs of letters and digits; apostrophes are dropped,
+// so "McDonald's" is the word "mcdonalds".
+//
+// Each word's rows are kept ascending and compressed: every row is written as its distance from the previous one
+// in a variable-length encoding (a byte for the gaps below 128), which takes a little over a byte per row for
+// the common words. Every BLOCK rows a skip entry records where the next block starts, so intersecting a rare word
+// with a common one jumps over the blocks of the common word instead of decoding them.
+//
+// Like the vendor index, one thread adds rows while any number of threads search, and every search takes a row
+// limit and only sees the rows below it. A large batch of rows, such as a freshly loaded file, is indexed in parallel.
+public class SearchIndex {
+    private static final int BLOCK = 128; // Rows per skip entry.
+    private static final int PARALLEL_ROWS = 1 << 16; // Batches smaller than this are indexed on the calling thread.
+    private static final int TERM_CACHE = 1024; // Slots of the caches of recently seen descriptions and vendors.
+
+    private final TransactionStore store;
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+    private final AtomicInteger termCount = new AtomicInteger();
+    private final TermCache descriptionTerms = new TermCache();
+    private final TermCache vendorTerms = new TermCache();
+    private int size;
+
+    public SearchIndex(TransactionStore store) {
+        this.store = store;
+    }
+
+    // Indexes every row of the store that is not indexed yet, in parallel if there are many.
+    public void addNewRows() {
+        int end = store.size();
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors(), (end - size) / PARALLEL_ROWS);
+        if (chunks > 1) {
+            addInParallel(end, chunks);
+        }
+        for (int row = size; row < end; row++) {
+            add(row);
+        }
+    }
+
+    public void add(int row) {
+        for (Postings posting : descriptionTerms.termsOf(store.getDescriptionId(row), store.getDescription(row))) {
+            posting.add(row);
+        }
+        for (Postings posting : vendorTerms.termsOf(store.getVendorId(row), store.getVendor(row))) {
+            posting.add(row); // Skipped if the description had the word too
+        }
+        size++;
+    }
+
+    // The words of the text in order, lowercased, repeats included.
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isLetterOrDigit(c)) {
+                word.appendCodePoint(c);
+            } else if ((c != '\'' && c != '’') && word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString().toLowerCase(Locale.ROOT));
+        }
+        return words;
+    }
+
+    // Rows below `limit` that match the query and are dated from `fromDay` to `toDay` (epoch days, both inclusive),
+    // ascending. `rows` is a snapshot of the store with at least `limit` rows, used for the dates and phrases.
+    public IntList search(Query query, TransactionStore rows, int limit, int fromDay, int toDay) {
+        IntList matches = null;
+        for (List<List<String>> clause : query.clauses) {
+            IntList clauseMatches = searchClause(clause, rows, limit, fromDay, toDay);
+            matches = matches == null ? clauseMatches : union(matches, clauseMatches);
+        }
+        return matches;
+    }
+
+    // Distinct words in the index.
+    public int getWordCount() { return postings.size(); }
+
+    // Approximate heap size of the index.
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            bytes += 40 + 2L * entry.getKey().length() + entry.getValue().estimatedBytes();
+        }
+        return bytes;
+    }
+
+    // The rows of one clause: every word in it, with the phrases in order, and in the date range.
+    private IntList searchClause(List<List<String>> clause, TransactionStore rows, int limit, int fromDay, int toDay) {
+        IntList matches = new IntList();
+        Set<String> words = new LinkedHashSet<>();
+        List<List<String>> phrases = new ArrayList<>();
+        for (List<String> part : clause) {
+            words.addAll(part);
+            if (part.size() > 1) {
+                phrases.add(part);
+            }
+        }
+        Cursor[] cursors = new Cursor[words.size()];
+        int i = 0;
+        for (String word : words) {
+            Postings posting = postings.get(word);
+            if (posting == null) {
+                return matches;
+            }
+            cursors[i++] = posting.cursor(limit);
+        }
+        // Led by the rarest word, the others only jump to its rows
+        Arrays.sort(cursors, (a, b) -> Integer.compare(a.count, b.count));
+        PhraseMatcher phraseMatcher = phrases.isEmpty() ? null : new PhraseMatcher(rows, phrases);
+        Cursor lead = cursors[0];
+        if (!lead.next()) {
+            return matches;
+        }
+        int candidate = lead.row;
+        while (true) {
+            boolean all = true;
+            for (i = 1; i < cursors.length; i++) {
+                if (!cursors[i].advance(candidate)) {
+                    return matches;
+                }
+                if (cursors[i].row > candidate) {
+                    if (!lead.advance(cursors[i].row)) {
+                        return matches;
+                    }
+                    candidate = lead.row;
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                int epochDay = rows.getEpochDay(candidate);
+                if (epochDay >= fromDay && epochDay <= toDay && (phraseMatcher == null || phraseMatcher.test(candidate))) {
+                    matches.add(candidate);
+                }
+                if (!lead.next()) {
+                    return matches;
+                }
+                candidate = lead.row;
+            }
+        }
+    }
+
+    private static IntList union(IntList a, IntList b) {
+        IntList merged = new IntList(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int x = a.get(i);
+            int y = b.get(j);
+            merged.add(Math.min(x, y));
+            if (x <= y) i++;
+            if (y <= x) j++;
+        }
+        for (; i < a.size(); i++) merged.add(a.get(i));
+        for (; j < b.size(); j++) merged.add(b.get(j));
+        return merged;
+    }
+
+    // Splits the rows from `size` to `end` into chunks, indexes each chunk into postings of its own in parallel,
+    // then appends the chunks' postings to the shared ones in row order, in parallel over the words.
+    private void addInParallel(int end, int chunks) {
+        int from = size;
+        Postings[][] chunkPostings = new Postings[chunks][];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            TermCache descriptions = new TermCache();
+            TermCache vendors = new TermCache();
+            Postings[] local = new Postings[termCount.get() + 64];
+            int chunkEnd = from + (int) ((long) (end - from) * (chunk + 1) / chunks);
+            for (int row = from + (int) ((long) (end - from) * chunk / chunks); row < chunkEnd; row++) {
+                for (Postings posting : descriptions.termsOf(store.getDescriptionId(row), store.getDescription(row))) {
+                    local = addLocal(local, posting, row);
+                }
+                for (Postings posting : vendors.termsOf(store.getVendorId(row), store.getVendor(row))) {
+                    local = addLocal(local, posting, row);
+                }
+            }
+            chunkPostings[chunk] = local;
+        });
+
+        Postings[] byId = new Postings[termCount.get()];
+        for (Postings posting : postings.values()) {
+            byId[posting.id] = posting;
+        }
+        IntStream.range(0, byId.length).parallel().forEach(id -> {
+            for (Postings[] local : chunkPostings) {
+                if (id < local.length && local[id] != null) {
+                    byId[id].addAll(local[id]);
+                }
+            }
+        });
+        size = end;
+    }
+
+    private static Postings[] addLocal(Postings[] local, Postings shared, int row) {
+        if (shared.id >= local.length) {
+            local = Arrays.copyOf(local, Math.max(shared.id + 1, local.length * 2));
+        }
+        if (local[shared.id] == null) {
+            local[shared.id] = new Postings(shared.id);
+        }
+        local[shared.id].add(row);
+        return local;
+    }
+
+    // The postings of every distinct word of the text, adding the words that are new to the index.
+    private Postings[] termsOf(String text) {
+        return new LinkedHashSet<>(words(text)).stream()
+                .map(word -> postings.computeIfAbsent(word, key -> new Postings(termCount.getAndIncrement())))
+                .toArray(Postings[]::new);
+    }
+
+    // Direct-mapped cache from description or vendor ids to the postings of their words, so a description
+    // that repeats (the same vendor, "Grocery shopping") is only split into words once in a while.
+    private class TermCache {
+        private final int[] ids = new int[TERM_CACHE];
+        private final Postings[][] terms = new Postings[TERM_CACHE][];
+
+        TermCache() {
+            Arrays.fill(ids, -1);
+        }
+
+        Postings[] termsOf(int id, String text) {
+            int slot = id & (TERM_CACHE - 1);
+            if (ids[slot] != id) {
+                terms[slot] = SearchIndex.this.termsOf(text);
+                ids[slot] = id;
+            }
+            return terms[slot];
+        }
+    }
+
+    // Rows of one word, ascending, as variable-length gaps. Only one thread appends; readers first read `count`
+    // and then the arrays, so the arrays they get always hold at least that many rows.
+    private static class Postings {
+        final int id; // Numbers the words of the index from 0, for the parallel build.
+        private volatile byte[] bytes = new byte[4];
+        private volatile int[] skipRows = new int[1]; // The row before each block, -1 before the first.
+        private volatile int[] skipOffsets = new int[1]; // Where each block starts in `bytes`.
+        private volatile int count;
+        private int length; // Bytes in use.
+        private int last = -1;
+
+        Postings(int id) {
+            this.id = id;
+        }
+
+        void add(int row) {
+            if (row <= last) {
+                return;
+            }
+            if (count % BLOCK == 0) {
+                int block = count / BLOCK;
+                if (block == skipRows.length) {
+                    skipRows = Arrays.copyOf(skipRows, block * 2);
+                    skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+                }
+                skipRows[block] = last;
+                skipOffsets[block] = length;
+            }
+            byte[] current = bytes;
+            if (length + 5 > current.length) {
+                current = Arrays.copyOf(current, Math.max(length + 5, length + (length >> 1)));
+            }
+            int gap = row - last;
+            while (gap >= 0x80) {
+                current[length++] = (byte) (gap | 0x80);
+                gap >>>= 7;
+            }
+            current[length++] = (byte) gap;
+            bytes = current;
+            last = row;
+            count = count + 1;
+        }
+
+        // Appends the rows of `other`, which all come after the rows of this one.
+        void addAll(Postings other) {
+            Cursor cursor = other.cursor(Integer.MAX_VALUE);
+            while (cursor.next()) {
+                add(cursor.row);
+            }
+        }
+
+        Cursor cursor(int limit) {
+            int visible = count;
+            return new Cursor(bytes, skipRows, skipOffsets, visible, limit);
+        }
+
+        long estimatedBytes() {
+            return 64 + bytes.length + 8L * skipRows.length;
+        }
+    }
+
+    // Reads the rows of one word below a limit, in order.
+    private static class Cursor {
+        private final byte[] bytes;
+        private final int[] skipRows;
+        private final int[] skipOffsets;
+        private final int count;
+        private final int limit;
+        private int index; // Rows read so far.
+        private int offset;
+        int row = -1; // The row read last.
+
+        Cursor(byte[] bytes, int[] skipRows, int[] skipOffsets, int count, int limit) {
+            this.bytes = bytes;
+            this.skipRows = skipRows;
+            this.skipOffsets = skipOffsets;
+            this.count = count;
+            this.limit = limit;
+        }
+
+        // Moves to the next row; false once there are no more below the limit.
+        boolean next() {
+            if (index == count) {
+                return false;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            row += gap;
+            index++;
+            return row < limit;
+        }
+
+        // Moves to the first row at or after `target`, skipping whole blocks where it can;
+        // false if there is none below the limit.
+        boolean advance(int target) {
+            if (row >= target) {
+                return row < limit;
+            }
+            // The last block that starts before the target
+            int low = index / BLOCK + 1;
+            int high = (count - 1) / BLOCK;
+            int block = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (skipRows[mid] < target) {
+                    block = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (block >= 0) {
+                index = block * BLOCK;
+                offset = skipOffsets[block];
+                row = skipRows[block];
+            }
+            while (next()) {
+                if (row >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Tells whether a row's description or vendor has every phrase of a clause, word for word. The answer depends
+    // only on the description and vendor, so it is worked out once per phrase and distinct description or vendor,
+    // and kept by id: 0 not yet known, 1 not there, 2 there.
+    private static class PhraseMatcher {
+        private final TransactionStore rows;
+        private final List<List<String>> phrases;
+        private final byte[][] descriptions;
+        private final byte[][] vendors;
+
+        PhraseMatcher(TransactionStore rows, List<List<String>> phrases) {
+            this.rows = rows;
+            this.phrases = phrases;
+            descriptions = new byte[phrases.size()][];
+            vendors = new byte[phrases.size()][];
+        }
+
+        boolean test(int row) {
+            // Vendors first: there are far fewer of them than descriptions, so their answers are mostly known
+            for (int i = 0; i < phrases.size(); i++) {
+                if (!found(i, vendors, rows.getVendorId(row), true)
+                        && !found(i, descriptions, rows.getDescriptionId(row), false)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean found(int phrase, byte[][] known, int id, boolean vendor) {
+            if (known[phrase] == null) {
+                known[phrase] = new byte[vendor ? rows.getVendorCount() : rows.getDescriptionCount()];
+            }
+            if (known[phrase][id] == 0) {
+                String text = vendor ? rows.getVendorName(id) : rows.getDescriptionName(id);
+                known[phrase][id] = (byte) (Collections.indexOfSubList(words(text), phrases.get(phrase)) >= 0 ? 2 : 1);
+            }
+            return known[phrase][id] == 2;
+        }
+    }
+
+    // A parsed search. Words next to each other must all be there; OR (in capitals) between them makes either side
+    // enough, and binds looser, so `coffee OR lunch starbucks` is coffee, or else both lunch and starbucks.
+    // "Quoted words" must come one after the other in the description or the vendor, as must words joined by
+    // punctuation, such as trader-joes.
+    public static class Query {
+        private final List<List<List<String>>> clauses; // Clauses of parts, each part one word or a phrase.
+        private final String text;
+
+        private Query(List<List<List<String>>> clauses, String text) {
+            this.clauses = clauses;
+            this.text = text;
+        }
+
+        public static Query parse(String text) {
+            List<List<List<String>>> clauses = new ArrayList<>();
+            List<List<String>> clause = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                int end;
+                String part;
+                if (c == '"') {
+                    end = text.indexOf('"', i + 1);
+                    end = end < 0 ? text.length() : end + 1;
+                    part = text.substring(i + 1, Math.max(end - 1, i + 1));
+                } else {
+                    end = i;
+                    while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') {
+                        end++;
+                    }
+                    part = text.substring(i, end);
+                }
+                if (part.equals("OR") && c != '"') {
+                    if (!clause.isEmpty()) {
+                        clauses.add(clause);
+                        clause = new ArrayList<>();
+                    }
+                } else {
+                    List<String> words = words(part);
+                    if (!words.isEmpty()) {
+                        clause.add(words);
+                    }
+                }
+                i = end;
+            }
+            if (!clause.isEmpty()) {
+                clauses.add(clause);
+            }
+            if (clauses.isEmpty()) {
+                throw new IllegalArgumentException("Nothing to search for: " + text);
+            }
+            return new Query(clauses, text.trim());
+        }
+
+        @Override
+        public String toString() { return text; }
+    }
+}
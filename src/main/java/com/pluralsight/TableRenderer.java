@@ -0,0 +1,221 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDate;
+
+// Draws the transaction tables of the ledger views.
+// The border lines are built once, and every row is laid out in one reusable StringBuilder: dates, times and
+// amounts are written as digits straight from the columns of the store and the cells are padded in place, so
+// rendering a row allocates nothing. The text is encoded through reused buffers and written in large blocks
+// instead of a call per character.
+public class TableRenderer {
+    private static final int CELL_WIDTH = 40;
+    private static final int TABLE_WIDTH = 204;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String TOP = line('┌', '─', '┐');
+    private static final String MIDDLE_TOP = line('├', '┬', '┤');
+    private static final String MIDDLE = line('├', '┼', '┤');
+    private static final String BOTTOM = line('└', '┴', '┘');
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder text = new StringBuilder(1024);
+    private final StringBuilder cell = new StringBuilder(64);
+    private boolean open;      // Whether a table was started and not yet closed.
+    private boolean firstRow;  // Whether the open table has no rows yet.
+    private long rowsRendered;
+    private long renderNanos;
+
+    // Writes to the stream in the platform's default charset, like System.out.
+    public TableRenderer(OutputStream target) {
+        this(target, Charset.defaultCharset());
+    }
+
+    public TableRenderer(OutputStream target, Charset charset) {
+        out = target;
+        // Characters the charset lacks, such as the box drawing on an ASCII console, print as '?' like System.out
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Starts a table with the given title and the column headings.
+    public void head(String title) {
+        long start = System.nanoTime();
+        close();
+        text.append(TOP);
+        text.append('│');
+        appendCentered(title, TABLE_WIDTH);
+        text.append("│\n");
+        text.append(MIDDLE_TOP);
+        text.append('│');
+        for (String heading : new String[]{"DATE", "TIME", "DESCRIPTION", "VENDOR", "AMOUNT"}) {
+            appendCentered(heading, CELL_WIDTH);
+            text.append('│');
+        }
+        text.append('\n');
+        text.append(MIDDLE);
+        open = true;
+        firstRow = true;
+        write();
+        renderNanos += System.nanoTime() - start;
+    }
+
+    // Adds one row of the store to the open table.
+    public void row(TransactionStore store, int row) {
+        long start = System.nanoTime();
+        if (!firstRow) {
+            text.append(MIDDLE);
+        }
+        firstRow = false;
+        text.append('│');
+        cell.setLength(0);
+        appendDate(cell, store.getEpochDay(row));
+        appendCentered(cell, CELL_WIDTH);
+        text.append('│');
+        cell.setLength(0);
+        appendTime(cell, store.getSecondOfDay(row));
+        appendCentered(cell, CELL_WIDTH);
+        text.append('│');
+        appendCentered(store.getDescription(row), CELL_WIDTH);
+        text.append('│');
+        appendCentered(store.getVendor(row), CELL_WIDTH);
+        text.append('│');
+        cell.setLength(0);
+        Money.appendTo(cell, store.getCents(row), store.getScale(row));
+        appendCentered(cell, CELL_WIDTH);
+        text.append("│\n");
+        if (text.length() >= BUFFER_SIZE / 2) {
+            write();
+        }
+        rowsRendered++;
+        renderNanos += System.nanoTime() - start;
+    }
+
+    // Draws the bottom border of the open table, if there is one.
+    public void close() {
+        if (open) {
+            text.append(BOTTOM);
+            open = false;
+        }
+    }
+
+    // Closes the open table and sends everything to the output.
+    public void flush() {
+        long start = System.nanoTime();
+        close();
+        write();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        renderNanos += System.nanoTime() - start;
+    }
+
+    public long getRowsRendered() { return rowsRendered; }
+
+    public long getElapsedMillis() { return renderNanos / 1_000_000; }
+
+    public double getRowsPerSecond() {
+        return renderNanos == 0 ? 0 : rowsRendered * 1_000_000_000.0 / renderNanos;
+    }
+
+    // Encodes the laid out text and writes it, one buffer at a time.
+    private void write() {
+        try {
+            for (int from = 0; from < text.length(); ) {
+                int to = Math.min(text.length(), from + chars.capacity());
+                chars.clear();
+                text.getChars(from, to, chars.array(), 0);
+                chars.limit(to - from);
+                // Stops early when `bytes` is full, or before a surrogate pair split by the chunk; the rest is redone
+                encoder.encode(chars, bytes, to == text.length());
+                out.write(bytes.array(), 0, bytes.position());
+                bytes.clear();
+                from += chars.position();
+            }
+            encoder.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        text.setLength(0);
+    }
+
+    // Centers the value in a cell of the given width, or keeps its middle when it is too long.
+    // Matches what the tables always looked like: any odd space goes to the right.
+    private void appendCentered(CharSequence value, int width) {
+        int length = value.length();
+        int pad = width / 2 - length / 2;
+        int from = Math.max(0, -pad);
+        int to = Math.min(length, from + width - Math.max(pad, 0));
+        for (int i = 0; i < pad; i++) {
+            text.append(' ');
+        }
+        text.append(value, from, to);
+        for (int i = Math.max(pad, 0) + to - from; i < width; i++) {
+            text.append(' ');
+        }
+    }
+
+    // yyyy-MM-dd, converted from the epoch day without creating a LocalDate.
+    static void appendDate(StringBuilder out, int epochDay) {
+        // Days to civil date, counting in 400-year eras that start on March 1st
+        long days = epochDay + 719_468L;
+        long era = Math.floorDiv(days, 146_097);
+        long dayOfEra = days - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            out.append(LocalDate.ofEpochDay(epochDay)); // Never in a real ledger; LocalDate knows the format
+            return;
+        }
+        appendDigits(out, (int) year, 4);
+        out.append('-');
+        appendDigits(out, month, 2);
+        out.append('-');
+        appendDigits(out, day, 2);
+    }
+
+    // HH:mm:ss
+    static void appendTime(StringBuilder out, int secondOfDay) {
+        appendDigits(out, secondOfDay / 3600, 2);
+        out.append(':');
+        appendDigits(out, secondOfDay / 60 % 60, 2);
+        out.append(':');
+        appendDigits(out, secondOfDay % 60, 2);
+    }
+
+    private static void appendDigits(StringBuilder out, int value, int width) {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static String line(char left, char junction, char right) {
+        StringBuilder line = new StringBuilder(TABLE_WIDTH + 3);
+        line.append(left);
+        for (int i = 0; i < TABLE_WIDTH; i++) {
+            line.append((i + 1) % (CELL_WIDTH + 1) == 0 ? junction : '─');
+        }
+        return line.append(right).append('\n').toString();
+    }
+}
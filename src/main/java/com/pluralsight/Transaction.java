@@ -1,58 +1,47 @@
 package com.pluralsight;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 
+// A view over one row of a `TransactionStore`.
+// Transactions created with the public constructor get a store of their own holding just that row.
 public class Transaction {
-    private LocalDate date;
-    private LocalTime time;
-    private String description;
-    private String vendor;
-    BigDecimal amount; // Can be negative (for payment) or positive (for deposit).
-    boolean isPayment; // Determines whether the amount is positive (false) or negative (true).
+    private final TransactionStore store;
+    private final int row;
     private static final String TIME_FORMAT = "HH:mm:ss";
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_FORMAT);
 
-    public Transaction(LocalDate date, LocalTime time, String description, String vendor, BigDecimal amount) {
-        this.date = date;
-        this.time = time;
-        this.description = description;
-        this.vendor = vendor;
-        this.amount = amount;
-        this.isPayment = 0 > amount.signum();
+    public Transaction(LocalDate date, LocalTime time, String description, String vendor, Money amount) {
+        this.store = new TransactionStore(1);
+        this.row = store.add(date, time, description, vendor, amount);
     }
 
-    // Getter and Setter
-    public String getDescription() { return description; }
-
-    public void setDescription(String description) { this.description = description; }
-
-    public String getVendor() { return vendor; }
-
-    public void setVendor(String vendor) { this.vendor = vendor; }
+    Transaction(TransactionStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
 
-    public BigDecimal getAmount() { return amount; }
+    // Getters
+    public String getDescription() { return store.getDescription(row); }
 
-    public void setAmount(BigDecimal amount) { this.amount = amount; }
+    public String getVendor() { return store.getVendor(row); }
 
-    public boolean isPayment() { return isPayment; }
+    public Money getAmount() { return store.getAmount(row); } // Can be negative (for payment) or positive (for deposit).
 
-    public void setPayment(boolean payment) { isPayment = payment; }
+    public boolean isPayment() { return store.isPayment(row); } // Whether the amount is negative.
 
-    public LocalDate getDate() { return date;}
+    public LocalDate getDate() { return store.getDate(row); }
 
-    public void setDate(LocalDate date) { this.date = date; }
+    public LocalTime getTime() { return store.getTime(row); }
 
-    public LocalTime getTime() { return time; }
+    TransactionStore getStore() { return store; }
 
-    public void setTime(LocalTime time) { this.time = time; }
+    int getRow() { return row; }
 
     @Override
     public String toString() {
         return this.getDate() + "|" + this.getTime().format(TIME_FORMATTER) + "|" + this.getDescription() + "|" +
                 this.getVendor() + "|" + this.getAmount();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.PrimitiveIterator;
+
+// Writes the transactions of a date range to a file in the ledger's own "date|time|description|vendor|amount"
+// format, oldest first, so the file can be imported again. Rows are streamed from the ledger index straight into
+// a buffered writer, each laid out from the store's columns in one reused StringBuilder, so exporting millions of
+// rows never builds a list of them or an object per row.
+public class TransactionExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private long rowsWritten;
+    private long elapsedNanos;
+
+    public TransactionExporter(File file) {
+        this.file = file;
+    }
+
+    // Writes the rows dated from `fromDay` to `toDay` (epoch days, both inclusive), replacing the file.
+    public void export(Ledger.Snapshot ledger, int fromDay, int toDay) throws IOException {
+        export(ledger, fromDay, toDay, new FileOutputStream(file));
+    }
+
+    // Writes the rows to the stream instead of the file, such as a compressing one, and closes it.
+    public void export(Ledger.Snapshot ledger, int fromDay, int toDay, OutputStream stream) throws IOException {
+        long start = System.nanoTime();
+        rowsWritten = 0;
+        try (BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            TransactionStore store = ledger.getRows();
+            StringBuilder line = new StringBuilder(128);
+            PrimitiveIterator.OfInt rows = ledger.ascending(fromDay, toDay);
+            while (rows.hasNext()) {
+                int row = rows.nextInt();
+                line.setLength(0);
+                TableRenderer.appendDate(line, store.getEpochDay(row));
+                line.append('|');
+                TableRenderer.appendTime(line, store.getSecondOfDay(row));
+                line.append('|').append(store.getDescription(row)).append('|').append(store.getVendor(row)).append('|');
+                Money.appendTo(line, store.getCents(row), store.getScale(row));
+                line.append('\n');
+                out.append(line);
+                rowsWritten++;
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    public long getRowsWritten() { return rowsWritten; }
+
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsWritten * 1_000_000_000.0 / elapsedNanos;
+    }
+}
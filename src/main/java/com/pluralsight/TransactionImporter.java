@@ -0,0 +1,261 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+// Bulk import of a transactions file in the ledger's own "date|time|description|vendor|amount" format.
+// The file is parsed and validated in parallel by `TransactionLoader`; descriptions and vendors are trimmed and
+// amount signs corrected (in parallel too), and rows that are already in the ledger, or earlier in the same file,
+// are dropped. Two rows are the same when their date, time, vendor (ignoring case) and amount match.
+// The remaining rows are appended to the transactions file (or the month segments) and then added to the ledger
+// in one batch.
+public class TransactionImporter {
+    private static final int WRITE_BATCH = 64 * 1024; // Records handed to the writer at a time.
+
+    // How the sign of each imported amount is set, like `promptTransaction` does for a single entry.
+    public enum Sign {
+        AS_IS,      // Keep the sign written in the file.
+        DEPOSITS,   // Every row is a deposit, so make every amount positive.
+        PAYMENTS    // Every row is a payment, so make every amount negative.
+    }
+
+    private final File file;
+    private final Sign sign;
+    private long rowsImported;
+    private long malformedRows;
+    private long duplicateRows;
+    private long elapsedNanos;
+
+    public TransactionImporter(File file, Sign sign) {
+        this.file = file;
+        this.sign = sign;
+    }
+
+    // Imports the file into the ledger. Rows are written through `writer` before the ledger shows them.
+    // If a write fails, the import stops there: the rows written before it are still added to the ledger, so the
+    // ledger keeps matching the file, and the IOException says how many rows made it. Running the import again
+    // skips those as duplicates; the rows of the failed write may be in the file in part, and only show up once
+    // the file is loaded again, so until then running it again may write them a second time.
+    public void importInto(Ledger ledger, TransactionWriter writer) throws IOException {
+        importInto(ledger, writer, true);
+    }
+
+    // With `addToLedger` false the rows are only written, for a ledger that a TransactionTailer fills from the file.
+    public void importInto(Ledger ledger, TransactionWriter writer, boolean addToLedger) throws IOException {
+        long start = System.nanoTime();
+        TransactionStore accepted = accept(ledger, null);
+        List<Transaction> batch = new ArrayList<>(accepted.size());
+        List<String> records = new ArrayList<>(Math.min(accepted.size(), WRITE_BATCH));
+        int written = 0;
+        try {
+            for (int row = 0; row < accepted.size(); row++) {
+                Transaction transaction = accepted.get(row);
+                batch.add(transaction);
+                records.add(transaction.toString());
+                if (records.size() == WRITE_BATCH) {
+                    writer.appendAll(records);
+                    written += records.size();
+                    records.clear();
+                }
+            }
+            if (!records.isEmpty()) {
+                writer.appendAll(records);
+                written += records.size();
+            }
+        } catch (IOException e) {
+            if (addToLedger) {
+                ledger.addAll(batch.subList(0, written));
+            }
+            throw stopped(written, accepted.size(), e);
+        } finally {
+            rowsImported = written;
+            elapsedNanos = System.nanoTime() - start;
+        }
+        if (addToLedger) {
+            ledger.addAll(batch);
+        }
+    }
+
+    // Imports the file into month segments. The months the file has dates in are loaded to find the duplicates.
+    // Like the import into one file, a failed write stops the import and the IOException says how far it got.
+    public void importInto(Ledger ledger, LedgerSegments segments) throws IOException {
+        long start = System.nanoTime();
+        TransactionStore accepted = accept(ledger, segments);
+        List<Transaction> batch = new ArrayList<>(Math.min(accepted.size(), WRITE_BATCH));
+        int written = 0;
+        try {
+            for (int row = 0; row < accepted.size(); row++) {
+                batch.add(accepted.get(row));
+                if (batch.size() == WRITE_BATCH) {
+                    segments.appendAll(batch);
+                    written += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                segments.appendAll(batch);
+                written += batch.size();
+            }
+        } catch (IOException e) {
+            throw stopped(written, accepted.size(), e);
+        } finally {
+            rowsImported = written;
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    private IOException stopped(int written, int accepted, IOException cause) {
+        return new IOException("Import of " + file + " stopped after " + written + " of " + accepted
+                + " new rows were written: " + (cause.getMessage() != null ? cause.getMessage() : cause), cause);
+    }
+
+    // Parses the file and returns its rows that are not in the ledger, trimmed and with their signs set.
+    private TransactionStore accept(Ledger ledger, LedgerSegments segments) throws IOException {
+        TransactionStore parsed = new TransactionStore();
+        TransactionLoader loader = new TransactionLoader(file);
+        loader.load(parsed);
+        malformedRows = loader.getMalformedRows() + (loader.getTornLineOffset() >= 0 ? 1 : 0);
+
+        int rows = parsed.size();
+        String[] vendorKeys = new String[parsed.getVendorCount()];
+        String[] vendorNames = new String[parsed.getVendorCount()];
+        Arrays.parallelSetAll(vendorNames, id -> parsed.getVendorName(id).trim());
+        Arrays.parallelSetAll(vendorKeys, id -> VendorIndex.normalize(vendorNames[id]));
+        String[] descriptions = new String[parsed.getDescriptionCount()];
+        Arrays.parallelSetAll(descriptions, id -> parsed.getDescriptionName(id).trim());
+        long[] cents = new long[rows];
+        IntStream.range(0, rows).parallel().forEach(row -> cents[row] = signed(parsed.getCents(row)));
+
+        // Only existing rows inside the dates of the file can be duplicates; the loader sorted the file by date
+        if (segments != null && rows > 0) {
+            segments.load(parsed.getEpochDay(0), parsed.getEpochDay(rows - 1));
+        }
+        Ledger.Snapshot existing = ledger.snapshot();
+        KeySet keys = new KeySet(rows);
+        if (rows > 0) {
+            TransactionStore existingRows = existing.getRows();
+            String[] existingKeys = new String[existingRows.getVendorCount()];
+            PrimitiveIterator.OfInt inRange = existing.ascending(parsed.getEpochDay(0), parsed.getEpochDay(rows - 1));
+            while (inRange.hasNext()) {
+                int row = inRange.nextInt();
+                int vendorId = existingRows.getVendorId(row);
+                if (existingKeys[vendorId] == null) {
+                    existingKeys[vendorId] = VendorIndex.normalize(existingRows.getVendorName(vendorId));
+                }
+                keys.add(existingRows.getEpochDay(row), existingRows.getSecondOfDay(row), existingKeys[vendorId],
+                        existingRows.getCents(row));
+            }
+        }
+
+        TransactionStore accepted = new TransactionStore(Math.max(rows, 1));
+        duplicateRows = 0;
+        for (int row = 0; row < rows; row++) {
+            int vendorId = parsed.getVendorId(row);
+            if (keys.add(parsed.getEpochDay(row), parsed.getSecondOfDay(row), vendorKeys[vendorId], cents[row])) {
+                accepted.add(parsed.getEpochDay(row), parsed.getSecondOfDay(row),
+                        descriptions[parsed.getDescriptionId(row)], vendorNames[vendorId], cents[row], parsed.getScale(row));
+            } else {
+                duplicateRows++;
+            }
+        }
+        return accepted;
+    }
+
+    private long signed(long cents) {
+        switch (sign) {
+            case DEPOSITS:
+                return Math.abs(cents);
+            case PAYMENTS:
+                return -Math.abs(cents);
+            default:
+                return cents;
+        }
+    }
+
+    public long getRowsRead() { return rowsImported + duplicateRows + malformedRows; }
+
+    public long getRowsImported() { return rowsImported; }
+
+    public long getMalformedRows() { return malformedRows; }
+
+    public long getDuplicateRows() { return duplicateRows; }
+
+    // Rows turned away, either because they did not parse or because the ledger already had them.
+    public long getRejectedRows() { return malformedRows + duplicateRows; }
+
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getRowsRead() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    // Open-addressing hash set of (date, time, vendor key, cents), with the fields kept in parallel arrays
+    // so millions of keys cost no object per key.
+    private static class KeySet {
+        private int[] days;
+        private int[] seconds;
+        private String[] vendors; // Null marks an empty slot.
+        private long[] cents;
+        private int size;
+
+        KeySet(int expected) {
+            allocate(Integer.highestOneBit(Math.max(expected, 8) * 2) * 2);
+        }
+
+        // Adds the key and returns true, or returns false if it was already there.
+        boolean add(int day, int second, String vendor, long amount) {
+            if (size * 2 >= vendors.length) {
+                grow();
+            }
+            int mask = vendors.length - 1;
+            for (int i = hash(day, second, vendor, amount) & mask; ; i = (i + 1) & mask) {
+                if (vendors[i] == null) {
+                    days[i] = day;
+                    seconds[i] = second;
+                    vendors[i] = vendor;
+                    cents[i] = amount;
+                    size++;
+                    return true;
+                }
+                if (days[i] == day && seconds[i] == second && cents[i] == amount && Objects.equals(vendors[i], vendor)) {
+                    return false;
+                }
+            }
+        }
+
+        private static int hash(int day, int second, String vendor, long amount) {
+            long h = (long) day * 86_400 + second;
+            h = h * 31 + amount;
+            h = h * 31 + vendor.hashCode();
+            h *= 0x9E3779B97F4A7C15L; // Spreads every input bit into the high bits used below
+            return (int) (h >>> 32);
+        }
+
+        private void allocate(int capacity) {
+            days = new int[capacity];
+            seconds = new int[capacity];
+            vendors = new String[capacity];
+            cents = new long[capacity];
+        }
+
+        private void grow() {
+            int[] oldDays = days;
+            int[] oldSeconds = seconds;
+            String[] oldVendors = vendors;
+            long[] oldCents = cents;
+            allocate(vendors.length * 2);
+            size = 0;
+            for (int i = 0; i < oldVendors.length; i++) {
+                if (oldVendors[i] != null) {
+                    add(oldDays[i], oldSeconds[i], oldVendors[i], oldCents[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Loads a transactions file by splitting it into line-aligned chunks, memory-mapping each chunk
+// and parsing the chunks in parallel on the common fork-join pool into column stores of their own.
+// Each chunk is sorted on its own and the sorted chunks are merged into the target store,
+// so the rows are appended in date and time order and can be indexed without a separate full sort.
+public class TransactionLoader {
+    private static final long CHUNK_SIZE = 32L * 1024 * 1024; // Bytes per parse task before it is aligned to a line.
+    private static final int PROBE_SIZE = 8 * 1024; // Bytes read at a time while looking for the end of a line.
+    private static final int ROW_BITS = 23; // A chunk of about CHUNK_SIZE bytes holds far fewer rows (a row is at least 23 bytes).
+    static final Metrics.Counter BYTES_READ = Metrics.counter("tracker_file_bytes_read_total",
+            "Bytes of transactions files parsed");
+    static final Metrics.Counter PARSE_ERRORS = Metrics.counter("tracker_parse_errors_total",
+            "Malformed rows in the transactions files that were loaded");
+
+    private final File file;
+    private final AtomicLong malformedRows = new AtomicLong();
+    private volatile long tornLineOffset = -1;
+    private volatile String tornLine;
+    private volatile long unterminatedLineOffset = -1;
+    private long firstMalformedOffset = -1; // Guarded by `malformedRows`, like the line and the reason.
+    private String firstMalformedLine;
+    private String firstMalformedReason;
+    private long rowsLoaded;
+    private long endOffset;
+    private long elapsedNanos;
+
+    public TransactionLoader(File file) {
+        this.file = file;
+    }
+
+    // Appends every row of the file to the given store, oldest first.
+    public void load(TransactionStore store) throws IOException {
+        load(store, 0);
+    }
+
+    // Appends the rows found from the given byte offset to the end of the file, oldest first.
+    // The offset must be the start of a line.
+    public void load(TransactionStore store, long fromOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            load(store, channel, fromOffset, Long.MAX_VALUE);
+        }
+    }
+
+    // Appends the rows found from `fromOffset` up to `toOffset` or the end of the file, whichever comes first,
+    // reading through a channel the caller keeps open. Both offsets must be the start of a line.
+    void load(TransactionStore store, FileChannel channel, long fromOffset, long toOffset) throws IOException {
+        long start = System.nanoTime();
+        long[] bounds = chunkBounds(channel, fromOffset, Math.min(toOffset, channel.size()));
+        endOffset = bounds[bounds.length - 1];
+        List<ChunkTask> tasks = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            tasks.add(new ChunkTask(channel, null, bounds[i], bounds[i + 1]));
+        }
+        rowsLoaded = merge(parseAll(tasks), store);
+        BYTES_READ.add(endOffset - bounds[0]);
+        PARSE_ERRORS.add(malformedRows.get());
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    // Appends the rows of the buffer, which holds a whole file's content (read from a compressed file, say),
+    // oldest first. The buffer is split into chunks the same way a file is.
+    void load(TransactionStore store, ByteBuffer content) {
+        long start = System.nanoTime();
+        long[] bounds = chunkBounds(content);
+        endOffset = content.limit();
+        List<ChunkTask> tasks = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            tasks.add(new ChunkTask(null, content, bounds[i], bounds[i + 1]));
+        }
+        rowsLoaded = merge(parseAll(tasks), store);
+        BYTES_READ.add(endOffset);
+        PARSE_ERRORS.add(malformedRows.get());
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    private static Chunk[] parseAll(List<ChunkTask> tasks) {
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        Chunk[] chunks = new Chunk[tasks.size()];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = tasks.get(i).join();
+        }
+        return chunks;
+    }
+
+    public long getRowsLoaded() { return rowsLoaded; }
+
+    public long getMalformedRows() { return malformedRows.get(); }
+
+    // The malformed row that comes first in the file and why it did not parse, or null if every row parsed.
+    public String getFirstMalformedRow() {
+        synchronized (malformedRows) {
+            return firstMalformedLine == null ? null : firstMalformedLine + " [" + firstMalformedReason + "]";
+        }
+    }
+
+    // Where the last line of the file starts if it was only partly written (it has no newline and does not parse),
+    // or -1. Such a line was left by a write that never finished and is skipped rather than counted as malformed.
+    public long getTornLineOffset() { return tornLineOffset; }
+
+    // The text of that line, or null.
+    public String getTornLine() { return tornLine; }
+
+    // Where the last line of the file starts if it has no newline but parses, or -1. It is loaded as a row:
+    // files written by older versions (which put the newline before each record) and by other programs end
+    // that way, and a later write by this program ends the line before adding its own.
+    public long getUnterminatedLineOffset() { return unterminatedLineOffset; }
+
+    // Where loading stopped: the file size at the time it was loaded, unless an end offset was given.
+    // Every row before this offset is in the store.
+    public long getEndOffset() { return endOffset; }
+
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsLoaded * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    // Splits the file up to `size` into roughly CHUNK_SIZE pieces, moving every boundary forward to just past a newline
+    // so that no line is ever shared between two chunks.
+    private static long[] chunkBounds(FileChannel channel, long fromOffset, long size) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(Math.min(fromOffset, size));
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        long position = fromOffset + CHUNK_SIZE;
+        while (position < size) {
+            long boundary = size;
+            long scan = position;
+            while (scan < size && boundary == size) {
+                probe.clear();
+                int read = channel.read(probe, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += read;
+            }
+            if (boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary + CHUNK_SIZE;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Splits a buffer the way `chunkBounds(FileChannel, ...)` splits a file.
+    private static long[] chunkBounds(ByteBuffer content) {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        int size = content.limit();
+        long position = CHUNK_SIZE;
+        while (position < size) {
+            int boundary = (int) position;
+            while (boundary < size && content.get(boundary) != '\n') {
+                boundary++;
+            }
+            if (boundary + 1 >= size) {
+                break;
+            }
+            bounds.add(boundary + 1L);
+            position = boundary + 1L + CHUNK_SIZE;
+        }
+        bounds.add((long) size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Sort key for one row of a chunk: date, then time, then file order.
+    // The epoch day takes the top 24 bits (enough for years 0000-9999), the second of the day the next 17
+    // and the row the low ROW_BITS, so plain long order is date and time order.
+    private static long sortKey(TransactionStore rows, int row) {
+        return ((long) rows.getEpochDay(row) << (17 + ROW_BITS)) | ((long) rows.getSecondOfDay(row) << ROW_BITS) | row;
+    }
+
+    // K-way merge of the sorted chunks into the store. A min-heap holds the chunk whose next row comes first;
+    // ties between chunks go to the earlier chunk so rows with the same date and time keep their file order.
+    private static long merge(Chunk[] chunks, TransactionStore store) {
+        int[] heap = new int[chunks.length];
+        int[] position = new int[chunks.length];
+        int heapSize = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i].order.length > 0) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, chunks, position);
+        }
+
+        long merged = 0;
+        while (heapSize > 0) {
+            int c = heap[0];
+            Chunk chunk = chunks[c];
+            store.add(chunk.rows, (int) (chunk.order[position[c]] & ((1 << ROW_BITS) - 1)));
+            merged++;
+            if (++position[c] == chunk.order.length) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, chunks, position);
+        }
+        return merged;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int i, Chunk[] chunks, int[] position) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && before(heap[left], heap[smallest], chunks, position)) smallest = left;
+            if (right < heapSize && before(heap[right], heap[smallest], chunks, position)) smallest = right;
+            if (smallest == i) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = swap;
+            i = smallest;
+        }
+    }
+
+    private static boolean before(int a, int b, Chunk[] chunks, int[] position) {
+        long keyA = chunks[a].order[position[a]] >> ROW_BITS;
+        long keyB = chunks[b].order[position[b]] >> ROW_BITS;
+        return keyA != keyB ? keyA < keyB : a < b;
+    }
+
+    // The rows parsed from one chunk and their sort keys in order (the row is in the low bits of each key).
+    private static class Chunk {
+        final TransactionStore rows;
+        final long[] order;
+
+        Chunk(TransactionStore rows, long[] order) {
+            this.rows = rows;
+            this.order = order;
+        }
+    }
+
+    // Parses the bytes from `start` to `end` of either a file or a buffer in memory, whichever is not null.
+    private class ChunkTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final ByteBuffer content;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, ByteBuffer content, long start, long end) {
+            this.channel = channel;
+            this.content = content;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            if (content != null) {
+                return parseChunk(content.slice((int) start, (int) (end - start)), start);
+            }
+            try {
+                return parseChunk(channel, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        if (end > start) {
+            return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start);
+        }
+        return parseChunk(ByteBuffer.allocate(0), start);
+    }
+
+    // Parses the lines of the buffer, which holds the bytes of the file from offset `start`.
+    private Chunk parseChunk(ByteBuffer buffer, long start) {
+        TransactionStore rows = new TransactionStore(buffer.limit() / 48 + 1);
+        if (buffer.limit() > 0) {
+            LineParser parser = new LineParser(rows);
+            int limit = buffer.limit();
+            int lineStart = 0;
+            for (int i = 0; i <= limit; i++) {
+                if (i == limit || buffer.get(i) == '\n') {
+                    // Only the end of the file can leave a line without its newline
+                    int before = rows.size();
+                    if (!parser.parse(buffer, lineStart, i, i == limit)) {
+                        byte[] torn = new byte[i - lineStart];
+                        buffer.get(lineStart, torn);
+                        tornLine = new String(torn, StandardCharsets.UTF_8);
+                        tornLineOffset = start + lineStart;
+                    } else if (parser.reason != null) {
+                        byte[] malformed = new byte[i - lineStart];
+                        buffer.get(lineStart, malformed);
+                        noteMalformed(start + lineStart, new String(malformed, StandardCharsets.UTF_8).strip(), parser.reason);
+                    } else if (i == limit && rows.size() > before) {
+                        unterminatedLineOffset = start + lineStart;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+        }
+
+        long[] order = new long[rows.size()];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = sortKey(rows, row);
+        }
+        Arrays.sort(order);
+        return new Chunk(rows, order);
+    }
+
+    // Chunks are parsed in parallel, so keep whichever malformed row is earliest in the file.
+    private void noteMalformed(long offset, String line, String reason) {
+        synchronized (malformedRows) {
+            if (firstMalformedOffset < 0 || offset < firstMalformedOffset) {
+                firstMalformedOffset = offset;
+                firstMalformedLine = line;
+                firstMalformedReason = reason;
+            }
+        }
+    }
+
+    // Hand-written parser for one "date|time|description|vendor|amount" line.
+    // The date and time are read straight from their fixed yyyy-MM-dd and HH:mm:ss positions
+    // and the amount is read straight into cents, so only the two strings are allocated per row.
+    private class LineParser {
+        private final TransactionStore rows;
+        private byte[] line = new byte[256];
+        private final int[] pipes = new int[4];
+        private String reason; // Why the last line was counted as malformed, or null if it wasn't.
+
+        LineParser(TransactionStore rows) {
+            this.rows = rows;
+        }
+
+        // Adds the line to the store. Returns false only for a line without a newline that does not parse;
+        // other lines that do not parse are counted as malformed.
+        boolean parse(ByteBuffer buffer, int from, int to, boolean unterminated) {
+            reason = null;
+            int length = to - from;
+            if (length > 0 && buffer.get(to - 1) == '\r') {
+                length--;
+            }
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            buffer.get(from, line, 0, length);
+            if (isBlank(length)) {
+                return true;
+            }
+
+            try {
+                int found = 0;
+                for (int i = 0; i < length && found < pipes.length; i++) {
+                    if (line[i] == '|') {
+                        pipes[found++] = i;
+                    }
+                }
+                if (found < pipes.length) {
+                    throw new IllegalArgumentException("expected 5 fields");
+                }
+                int amountEnd = length;
+                for (int i = pipes[3] + 1; i < length; i++) {
+                    if (line[i] == '|') {
+                        amountEnd = i;
+                        break;
+                    }
+                }
+
+                int epochDay = parseDate(0, pipes[0]);
+                int secondOfDay = parseTime(pipes[0] + 1, pipes[1]);
+                long cents = Money.parseCents(line, pipes[3] + 1, amountEnd);
+                rows.add(epochDay, secondOfDay,
+                        new String(line, pipes[1] + 1, pipes[2] - pipes[1] - 1, StandardCharsets.UTF_8),
+                        new String(line, pipes[2] + 1, pipes[3] - pipes[2] - 1, StandardCharsets.UTF_8),
+                        cents, Money.parseScale(line, pipes[3] + 1, amountEnd));
+            } catch (RuntimeException e) {
+                if (unterminated) {
+                    return false;
+                }
+                malformedRows.incrementAndGet();
+                reason = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+            return true;
+        }
+
+        private boolean isBlank(int length) {
+            for (int i = 0; i < length; i++) {
+                if (line[i] != ' ' && line[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // yyyy-MM-dd
+        private int parseDate(int from, int to) {
+            if (to - from != 10 || line[from + 4] != '-' || line[from + 7] != '-') {
+                throw new IllegalArgumentException("bad date");
+            }
+            return (int) LocalDate.of(number(from, 4), number(from + 5, 2), number(from + 8, 2)).toEpochDay();
+        }
+
+        // HH:mm:ss
+        private int parseTime(int from, int to) {
+            if (to - from != 8 || line[from + 2] != ':' || line[from + 5] != ':') {
+                throw new IllegalArgumentException("bad time");
+            }
+            return LocalTime.of(number(from, 2), number(from + 3, 2), number(from + 6, 2)).toSecondOfDay();
+        }
+
+        private int number(int from, int width) {
+            int value = 0;
+            for (int i = from; i < from + width; i++) {
+                value = value * 10 + digit(line[i]);
+            }
+            return value;
+        }
+
+        private int digit(byte b) {
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("bad digit");
+            }
+            return digit;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Binary copy of a `TransactionStore`, kept next to the CSV so startup does not have to re-parse it.
+// Layout:
+// - header: magic, version, how many bytes of the CSV the snapshot covers, a CRC of the last bytes of that
+//   range, row and string counts, the size of the string tables and a CRC of the whole file (everything after
+//   the header, then the header with this field zeroed)
+// - the vendor and description tables, as length-prefixed UTF-8 strings
+// - one fixed-width record per row, oldest first: date, time, cents, scale, vendor id, description id
+// The CSV stays the interchange format; rows appended to it after the snapshot was taken are replayed on top.
+public class TransactionSnapshot {
+    private static final int MAGIC = 0x46545331; // "FTS1"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 8 + 8;
+    private static final int CRC_OFFSET = HEADER_SIZE - 8; // The CRC is the last field of the header.
+    private static final int RECORD_SIZE = 4 + 4 + 8 + 1 + 4 + 4;
+    private static final int CSV_CHECK_SIZE = 4096; // Bytes at the end of the covered CSV range that must still match.
+    private static final int MAP_WINDOW = (Integer.MAX_VALUE / RECORD_SIZE) * RECORD_SIZE;
+
+    // Loads the snapshot into an empty store and returns how many bytes of the CSV it covers.
+    // Returns -1, leaving the store untouched, when the snapshot is missing, corrupt or no longer matches the CSV.
+    public static long read(File snapshotFile, File csvFile, TransactionStore store) throws IOException {
+        if (!snapshotFile.exists() || !csvFile.exists() || !store.isEmpty()) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return -1;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return -1;
+            }
+            long csvLength = header.getLong();
+            long csvCheck = header.getLong();
+            int rowCount = header.getInt();
+            int vendorCount = header.getInt();
+            int descriptionCount = header.getInt();
+            long dictionaryBytes = header.getLong();
+            long fileCrc = header.getLong();
+
+            long recordsStart = HEADER_SIZE + dictionaryBytes;
+            if (rowCount < 0 || dictionaryBytes < 0
+                    || channel.size() != recordsStart + (long) rowCount * RECORD_SIZE
+                    || csvFile.length() < csvLength || csvCheck(csvFile, csvLength) != csvCheck) {
+                return -1;
+            }
+            if (fileCrc(channel, header) != fileCrc) {
+                return -1;
+            }
+
+            DataInputStream strings = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(HEADER_SIZE)), 1 << 16));
+            for (int i = 0; i < vendorCount; i++) {
+                store.internVendor(strings.readUTF());
+            }
+            for (int i = 0; i < descriptionCount; i++) {
+                store.internDescription(strings.readUTF());
+            }
+
+            store.ensureRows(rowCount);
+            long position = recordsStart;
+            long end = recordsStart + (long) rowCount * RECORD_SIZE;
+            while (position < end) {
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, end - position));
+                while (records.hasRemaining()) {
+                    store.addEncoded(records.getInt(), records.getInt(), records.getLong(), records.get(),
+                            records.getInt(), records.getInt());
+                }
+                position += records.capacity();
+            }
+            return csvLength;
+        }
+    }
+
+    // Writes the store to the snapshot file, recording that it matches the first `csvLength` bytes of the CSV.
+    // Rows are written in index order so they can be indexed again without searching when the snapshot is read.
+    // The snapshot is written to a temporary file first and moved into place, so a crash never leaves half of one.
+    public static void write(File snapshotFile, File csvFile, TransactionStore store, LedgerIndex index, long csvLength)
+            throws IOException {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            for (int i = 0; i < store.getVendorCount(); i++) {
+                out.writeUTF(store.getVendorName(i));
+            }
+            for (int i = 0; i < store.getDescriptionCount(); i++) {
+                out.writeUTF(store.getDescriptionName(i));
+            }
+            out.flush();
+            long dictionaryBytes = out.size();
+
+            PrimitiveIterator.OfInt rows = index.ascending();
+            while (rows.hasNext()) {
+                int row = rows.nextInt();
+                out.writeInt(store.getEpochDay(row));
+                out.writeInt(store.getSecondOfDay(row));
+                out.writeLong(store.getCents(row));
+                out.writeByte(store.getScale(row));
+                out.writeInt(store.getVendorId(row));
+                out.writeInt(store.getDescriptionId(row));
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(csvLength)
+                    .putLong(csvCheck(csvFile, csvLength))
+                    .putInt(index.size())
+                    .putInt(store.getVendorCount())
+                    .putInt(store.getDescriptionCount())
+                    .putLong(dictionaryBytes)
+                    .putLong(0);
+            crc.update(header.array());
+            header.putLong(CRC_OFFSET, crc.getValue()).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // CRC of everything after the header, then of the header with its CRC field zeroed, the order they are written in.
+    private static long fileCrc(FileChannel channel, ByteBuffer header) throws IOException {
+        CRC32 crc = new CRC32();
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        while (position < size) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+            crc.update(window);
+            position += window.capacity();
+        }
+        byte[] headerBytes = new byte[HEADER_SIZE];
+        header.get(0, headerBytes);
+        Arrays.fill(headerBytes, CRC_OFFSET, HEADER_SIZE, (byte) 0);
+        crc.update(headerBytes);
+        return crc.getValue();
+    }
+
+    // CRC of the last bytes before `csvLength`, used to notice a CSV that was rewritten rather than appended to.
+    private static long csvCheck(File csvFile, long csvLength) throws IOException {
+        CRC32 crc = new CRC32();
+        int length = (int) Math.min(CSV_CHECK_SIZE, csvLength);
+        if (length > 0) {
+            try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer bytes = ByteBuffer.allocate(length);
+                while (bytes.hasRemaining() && channel.read(bytes, csvLength - length + bytes.position()) > 0) {
+                    // Keep reading until the buffer is full.
+                }
+                bytes.flip();
+                crc.update(bytes);
+            }
+        }
+        return crc.getValue();
+    }
+}
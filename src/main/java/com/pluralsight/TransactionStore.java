@@ -0,0 +1,263 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Column-oriented storage for transactions.
+// Every field of a transaction is kept in its own primitive array, indexed by row:
+// - dates as epoch days
+// - times as seconds of the day
+// - amounts as cents, plus the number of decimal places the amount was written with so it prints back the same
+// - vendors and descriptions as ids into tables of distinct strings
+// A `Transaction` is only a view over one of these rows.
+//
+// Rows are only ever appended, and growing a column copies it to a new array, so `snapshot()` can hand out
+// read-only views that share the arrays: the rows a view can see never change while this store keeps growing.
+public class TransactionStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    private int[] dates;
+    private int[] times;
+    private long[] amounts;
+    private byte[] scales;
+    private int[] vendors;
+    private int[] descriptions;
+    private final StringTable vendorNames;
+    private final StringTable descriptionNames;
+    private final boolean readOnly;
+
+    public TransactionStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TransactionStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        dates = new int[capacity];
+        times = new int[capacity];
+        amounts = new long[capacity];
+        scales = new byte[capacity];
+        vendors = new int[capacity];
+        descriptions = new int[capacity];
+        vendorNames = new StringTable();
+        descriptionNames = new StringTable();
+        readOnly = false;
+    }
+
+    private TransactionStore(TransactionStore source) {
+        size = source.size;
+        dates = source.dates;
+        times = source.times;
+        amounts = source.amounts;
+        scales = source.scales;
+        vendors = source.vendors;
+        descriptions = source.descriptions;
+        vendorNames = source.vendorNames.snapshot();
+        descriptionNames = source.descriptionNames.snapshot();
+        readOnly = true;
+    }
+
+    // A read-only view of the rows added so far. Only the writing thread may call this; the view itself
+    // can then be read from any thread once it has been safely published.
+    public TransactionStore snapshot() {
+        return readOnly ? this : new TransactionStore(this);
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    // Adds a row to the end of the store and returns its row index.
+    // Rows are only ever appended, so a row index never changes once it is handed out.
+    public int add(LocalDate date, LocalTime time, String description, String vendor, Money amount) {
+        return add((int) date.toEpochDay(), time.toSecondOfDay(), description, vendor, amount.getCents(), amount.getScale());
+    }
+
+    public int add(int epochDay, int secondOfDay, String description, String vendor, long cents, int scale) {
+        checkWritable();
+        return addEncoded(epochDay, secondOfDay, cents, scale, vendorNames.idOf(vendor), descriptionNames.idOf(description));
+    }
+
+    // Copies one row of another store onto the end of this one.
+    public int add(TransactionStore other, int row) {
+        return add(other.dates[row], other.times[row], other.getDescription(row), other.getVendor(row),
+                other.amounts[row], other.scales[row]);
+    }
+
+    // Appends a row whose vendor and description are already ids in this store's string tables.
+    int addEncoded(int epochDay, int secondOfDay, long cents, int scale, int vendorId, int descriptionId) {
+        checkWritable();
+        if (vendorId < 0 || vendorId >= vendorNames.size() || descriptionId < 0 || descriptionId >= descriptionNames.size()) {
+            throw new IllegalArgumentException("Unknown string id in row " + size);
+        }
+        ensureCapacity(size + 1);
+        dates[size] = epochDay;
+        times[size] = secondOfDay;
+        amounts[size] = cents;
+        scales[size] = (byte) scale;
+        vendors[size] = vendorId;
+        descriptions[size] = descriptionId;
+        return size++;
+    }
+
+    // Drops the rows from `rows` on. Only for rows no snapshot has: a snapshot shares the arrays and would see
+    // the rows added in their place later.
+    void truncate(int rows) {
+        checkWritable();
+        if (rows < 0 || rows > size) {
+            throw new IllegalArgumentException("Can't truncate " + size + " rows to " + rows);
+        }
+        size = rows;
+    }
+
+    int internVendor(String vendor) {
+        checkWritable();
+        return vendorNames.idOf(vendor);
+    }
+
+    int internDescription(String description) {
+        checkWritable();
+        return descriptionNames.idOf(description);
+    }
+
+    void ensureRows(int rows) { ensureCapacity(rows); }
+
+    public Transaction get(int row) {
+        checkRow(row);
+        return new Transaction(this, row);
+    }
+
+    // Column accessors
+    public int getEpochDay(int row) { return dates[row]; }
+
+    public int getSecondOfDay(int row) { return times[row]; }
+
+    public long getCents(int row) { return amounts[row]; }
+
+    public int getScale(int row) { return scales[row]; }
+
+    public int getVendorId(int row) { return vendors[row]; }
+
+    public int getDescriptionId(int row) { return descriptions[row]; }
+
+    public LocalDate getDate(int row) { return LocalDate.ofEpochDay(dates[row]); }
+
+    public LocalTime getTime(int row) { return LocalTime.ofSecondOfDay(times[row]); }
+
+    public Money getAmount(int row) { return Money.ofCents(amounts[row], scales[row]); }
+
+    public boolean isPayment(int row) { return amounts[row] < 0; }
+
+    public String getVendor(int row) { return vendorNames.get(vendors[row]); }
+
+    public String getDescription(int row) { return descriptionNames.get(descriptions[row]); }
+
+    public int getVendorCount() { return vendorNames.size(); }
+
+    public String getVendorName(int vendorId) { return vendorNames.get(vendorId); }
+
+    public int getDescriptionCount() { return descriptionNames.size(); }
+
+    public String getDescriptionName(int descriptionId) { return descriptionNames.get(descriptionId); }
+
+    // Approximate bytes retained by the columns and the string tables.
+    public long estimatedBytes() {
+        long columns = (long) dates.length * (4 + 4 + 8 + 1 + 4 + 4);
+        return columns + vendorNames.estimatedBytes() + descriptionNames.estimatedBytes();
+    }
+
+    // Approximate bytes the same rows would take as one Transaction object each
+    // (object header, LocalDate, LocalTime, BigDecimal and two Strings per row, plus the list slot).
+    public long estimatedObjectBytes() {
+        long bytes = 0;
+        for (int row = 0; row < size; row++) {
+            bytes += 4 + 32 + 24 + 24 + 40
+                    + stringBytes(getVendor(row)) + stringBytes(getDescription(row));
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String s) {
+        return 24 + 16 + s.length();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= dates.length) {
+            return;
+        }
+        int grown = Math.max(capacity, dates.length + (dates.length >> 1));
+        dates = Arrays.copyOf(dates, grown);
+        times = Arrays.copyOf(times, grown);
+        amounts = Arrays.copyOf(amounts, grown);
+        scales = Arrays.copyOf(scales, grown);
+        vendors = Arrays.copyOf(vendors, grown);
+        descriptions = Arrays.copyOf(descriptions, grown);
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshot of the transaction store is read-only");
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+    }
+
+    // Dictionary of distinct strings. Each string is stored once and referred to by its id.
+    // Like the columns, the values array is only appended to and copied when it grows, so snapshots can share it.
+    private static class StringTable {
+        private final HashMap<String, Integer> ids;
+        private String[] values;
+        private int size;
+        private long characters;
+
+        StringTable() {
+            ids = new HashMap<>();
+            values = new String[16];
+        }
+
+        private StringTable(StringTable source) {
+            ids = null;
+            values = source.values;
+            size = source.size;
+            characters = source.characters;
+        }
+
+        StringTable snapshot() {
+            return new StringTable(this);
+        }
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = size;
+                ids.put(value, id);
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = value;
+                characters += value.length();
+            }
+            return id;
+        }
+
+        String get(int id) {
+            if (id >= size) {
+                throw new IndexOutOfBoundsException("String id " + id + " out of bounds for size " + size);
+            }
+            return values[id];
+        }
+
+        int size() { return size; }
+
+        long estimatedBytes() {
+            // String object + array header per value, a map entry and boxed id, and the array slot.
+            return size * (24L + 16 + 32 + 16 + 4) + characters;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Follows the transactions file while the tracker runs, so rows appended to it by other programs
+// (a bank sync, a script, another tracker) show up in the ledger and its indexes without a reload.
+// It remembers the byte offset it has read up to and parses only what was appended after it, and only up to
+// the last newline, so a line that is still being written is picked up once it is complete.
+//
+// A WatchService on the file's directory wakes it within milliseconds of a change. The file is also checked every
+// "tracker.tailPollMillis" milliseconds (1000 by default), which is all it does where the directory can't be watched.
+// If the file is cut shorter than what was read, or replaced by a new file (rotated), the new content is read
+// from its beginning and the rows already in the ledger stay, the way `tail -F` does.
+public class TransactionTailer implements Closeable {
+    private static final long POLL_MILLIS = Long.getLong("tracker.tailPollMillis", 1000);
+    private static final int PROBE_SIZE = 8 * 1024; // Bytes read at a time while looking back for the last newline.
+    private static final Metrics.Operation TAIL = Metrics.operation("tail",
+            "Adding the rows appended to the transactions file");
+    private static final Metrics.Counter RESETS = Metrics.counter("tracker_tail_resets_total",
+            "Times the transactions file was truncated or replaced while it was followed");
+
+    private final Path path;
+    private final Ledger ledger;
+    private final Runnable onReplaced;
+    private final ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+    // Guards the fields below, and `poll` holds it through file reads and a ledger write. A ReentrantLock like the
+    // ledger's and the writer's, which unlike `synchronized` would not pin a virtual thread to its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel; // The file being read; null while there is no file.
+    private Object fileKey; // Tells the file apart from one that replaces it, where the file system has keys.
+    private long offset; // Every line before this offset of `channel` is in the ledger.
+    private long rowsAdded;
+    private long malformedRows;
+    private long resets;
+    private Thread thread;
+    private volatile boolean closed;
+
+    // Follows the file from `offset`, which must be the start of a line, adding what it finds to the ledger.
+    // `onReplaced` runs when the file was replaced, after the old file was read to its end.
+    public TransactionTailer(File file, Ledger ledger, long offset, Runnable onReplaced) throws IOException {
+        this.path = file.toPath();
+        this.ledger = ledger;
+        this.onReplaced = onReplaced;
+        if (open()) {
+            this.offset = Math.min(offset, channel.size());
+        }
+    }
+
+    // Starts following the file in a background thread.
+    public void start() {
+        lock.lock();
+        try {
+            if (thread == null) {
+                thread = new Thread(this::run, "transactions-tailer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds every complete line appended since the last call and returns how many rows that was.
+    // Works after `close` too, opening the file again.
+    public int poll() throws IOException {
+        lock.lock();
+        try {
+            int added = 0;
+            Object currentKey = currentFileKey();
+            if (channel == null) {
+                if (!open()) {
+                    return 0;
+                }
+            } else if (currentKey != null && fileKey != null && !currentKey.equals(fileKey)) {
+                // Rotated: finish the old file, whose last rows may have been written after the last call
+                added += readNewLines();
+                channel.close();
+                channel = null;
+                offset = 0;
+                resets++;
+                RESETS.increment();
+                onReplaced.run();
+                if (!open()) {
+                    return added;
+                }
+            }
+            if (channel.size() < offset) {
+                offset = 0;
+                resets++;
+                RESETS.increment();
+            }
+            return added + readNewLines();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Where the next line to read starts; every row before it is in the ledger.
+    public long getOffset() {
+        lock.lock();
+        try {
+            return offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRowsAdded() {
+        lock.lock();
+        try {
+            return rowsAdded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMalformedRows() {
+        lock.lock();
+        try {
+            return malformedRows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // How many times the file was truncated or replaced since it was first followed. After that the ledger
+    // also holds rows of content the file no longer has, so the ledger no longer matches any prefix of the file.
+    public long getResets() {
+        lock.lock();
+        try {
+            return resets;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the background thread and closes the file.
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        lock.lock();
+        try {
+            closed = true;
+            running = thread;
+            thread = null;
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) {
+            running.interrupt();
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        fileKey = currentFileKey();
+        return true;
+    }
+
+    // The key of the file now at the path, or null if there is none (or the file system has no keys).
+    private Object currentFileKey() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private int readNewLines() throws IOException {
+        long end = lastLineEnd(channel.size());
+        if (end <= offset) {
+            return 0;
+        }
+        Metrics.Timing timing = TAIL.start();
+        TransactionStore rows = new TransactionStore();
+        TransactionLoader loader = new TransactionLoader(path.toFile());
+        loader.load(rows, channel, offset, end);
+        List<Transaction> transactions = new ArrayList<>(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            transactions.add(rows.get(row));
+        }
+        ledger.addAll(transactions);
+        offset = end;
+        rowsAdded += transactions.size();
+        malformedRows += loader.getMalformedRows();
+        timing.stop(transactions.size());
+        return transactions.size();
+    }
+
+    // The offset just past the last newline before `size`, or `offset` if nothing after it ends in one.
+    private long lastLineEnd(long size) throws IOException {
+        long position = size;
+        while (position > offset) {
+            int length = (int) Math.min(PROBE_SIZE, position - offset);
+            probe.clear().limit(length);
+            int read = 0;
+            while (read < length) {
+                int n = channel.read(probe, position - length + read);
+                if (n < 0) {
+                    return offset; // Truncated while reading; the next call starts over
+                }
+                read += n;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (probe.get(i) == '\n') {
+                    return position - length + i + 1;
+                }
+            }
+            position -= length;
+        }
+        return offset;
+    }
+
+    private void run() {
+        WatchService watcher = watch();
+        try {
+            while (!closed) {
+                if (watcher != null) {
+                    awaitChange(watcher);
+                } else {
+                    Thread.sleep(POLL_MILLIS);
+                }
+                try {
+                    poll();
+                } catch (IOException | RuntimeException e) {
+                    if (!closed) {
+                        System.out.println("Error: following " + path.getFileName() + ": " + e);
+                        Thread.sleep(POLL_MILLIS);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        } finally {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    // Nothing left to clean up
+                }
+            }
+        }
+    }
+
+    // Watches the file's directory, or returns null to fall back on polling.
+    private WatchService watch() {
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            try {
+                path.toAbsolutePath().getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                return watcher;
+            } catch (IOException | UnsupportedOperationException e) {
+                watcher.close();
+                return null;
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    // Waits until something in the directory changed, or at most POLL_MILLIS.
+    private static void awaitChange(WatchService watcher) throws InterruptedException {
+        WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only writer for the transactions file, in the style of a write-ahead log.
+// Every record is written as one line ending in a newline, so a crash can only ever leave a partial last line,
+// which the loader detects and discards.
+//
+// One file channel stays open for the life of the writer. Appends from several threads are grouped:
+// the first thread to arrive writes everything that is waiting in one write (and one fsync), while the
+// others wait for it, so a burst of appends costs one fsync instead of one each.
+public class TransactionWriter implements Closeable {
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("tracker_file_bytes_written_total",
+            "Bytes appended to the transactions file");
+    private static final Metrics.Counter SYNCS = Metrics.counter("tracker_file_syncs_total",
+            "Times the transactions file was forced to disk");
+    // When appended records are forced to disk.
+    public enum SyncPolicy {
+        EVERY_WRITE,     // Before append returns. Nothing acknowledged is ever lost.
+        EVERY_MILLIS,    // In the background, every `syncValue` milliseconds.
+        EVERY_RECORDS    // Once at least `syncValue` records were written since the last fsync.
+    }
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final long syncValue;
+    private final ScheduledExecutorService syncTimer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private List<byte[]> pending = new ArrayList<>();
+    private long pendingBytes;
+    private long nextSequence;       // Sequence number given to the next appended record.
+    private long writtenSequence;    // Every record below this one has been written (and synced if required).
+    private boolean writing;         // Whether some thread is currently writing a group.
+    private IOException failure;     // The first write or background sync that failed; every later append throws.
+    private long unsyncedRecords;
+    private long recordsWritten;
+    private long syncs;
+
+    private TransactionWriter(FileChannel channel, boolean endLastLine, SyncPolicy policy, long syncValue) {
+        this.channel = channel;
+        this.policy = policy;
+        this.syncValue = syncValue;
+        if (endLastLine) {
+            pending.add(new byte[]{'\n'});
+            pendingBytes = 1;
+        }
+
+        if (policy == SyncPolicy.EVERY_MILLIS) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transactions-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncTimer.scheduleAtFixedRate(this::syncQuietly, syncValue, syncValue, TimeUnit.MILLISECONDS);
+        } else {
+            syncTimer = null;
+        }
+    }
+
+    public static TransactionWriter open(File file, SyncPolicy policy, long syncValue) throws IOException {
+        // Files written by older versions put the newline before each record, so the last line may not be ended yet
+        boolean endLastLine = false;
+        if (file.length() > 0) {
+            try (FileChannel reader = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                reader.read(last, reader.size() - 1);
+                endLastLine = last.get(0) != '\n';
+            }
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new TransactionWriter(channel, endLastLine, policy, syncValue);
+    }
+
+    // Reads the sync policy from the "tracker.fsync" system property:
+    // "always" (the default), "millis:<n>" or "records:<n>".
+    public static TransactionWriter open(File file) throws IOException {
+        String setting = System.getProperty("tracker.fsync", "always");
+        if (setting.equals("always")) {
+            return open(file, SyncPolicy.EVERY_WRITE, 1);
+        }
+        String[] parts = setting.split(":", -1);
+        long value = -1;
+        if (parts.length == 2) {
+            try {
+                value = Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                // Reported below with the forms that are accepted
+            }
+        }
+        if (value > 0 && parts[0].equals("millis")) {
+            return open(file, SyncPolicy.EVERY_MILLIS, value);
+        }
+        if (value > 0 && parts[0].equals("records")) {
+            return open(file, SyncPolicy.EVERY_RECORDS, value);
+        }
+        throw new IllegalArgumentException("Invalid tracker.fsync setting: " + setting
+                + " (expected always, millis:<n> or records:<n> with n > 0)");
+    }
+
+    // Cuts a partially written last line off the file. `offset` is where that line starts.
+    public static void discardTornTail(File file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+    }
+
+    public void append(Transaction transaction) throws IOException {
+        appendAll(List.of(transaction.toString()));
+    }
+
+    // Appends the records as consecutive lines and returns once they are written, and synced if the policy says so.
+    public void appendAll(List<String> records) throws IOException {
+        lock.lock();
+        try {
+            for (String record : records) {
+                byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+                pending.add(bytes);
+                pendingBytes += bytes.length;
+            }
+            nextSequence += records.size();
+            long mine = nextSequence;
+
+            while (writtenSequence < mine) {
+                if (failure != null) {
+                    throw new IOException("Earlier write or sync of the transactions file failed", failure);
+                }
+                if (writing) {
+                    written.await();
+                } else {
+                    writeGroup();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the transactions file");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held. Takes every pending record, writes them with the lock released
+    // so other threads can keep queueing up the next group, then wakes up everyone waiting.
+    private void writeGroup() throws IOException {
+        List<byte[]> group = pending;
+        long groupBytes = pendingBytes;
+        long groupEnd = nextSequence;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        writing = true;
+        lock.unlock();
+        IOException error = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) groupBytes);
+            for (byte[] bytes : group) {
+                buffer.put(bytes);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            BYTES_WRITTEN.add(groupBytes);
+            boolean sync;
+            synchronized (this) {
+                unsyncedRecords += groupEnd - writtenSequence;
+                sync = policy == SyncPolicy.EVERY_WRITE
+                        || (policy == SyncPolicy.EVERY_RECORDS && unsyncedRecords >= syncValue);
+            }
+            if (sync) {
+                sync();
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            writing = false;
+            if (error == null) {
+                recordsWritten += groupEnd - writtenSequence;
+                writtenSequence = groupEnd;
+            } else {
+                failure = error;
+            }
+            written.signalAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Only takes off the records written before the force started: a group written meanwhile may not be covered.
+    private void sync() throws IOException {
+        long covered;
+        synchronized (this) {
+            covered = unsyncedRecords;
+        }
+        channel.force(false);
+        SYNCS.increment();
+        synchronized (this) {
+            unsyncedRecords -= covered;
+            syncs++;
+        }
+    }
+
+    // Runs on the timer thread, so a failure is kept for the next append to report: records it already
+    // acknowledged may not be on disk.
+    private void syncQuietly() {
+        try {
+            if (unsyncedRecordCount() > 0) {
+                sync();
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                if (failure == null) {
+                    failure = e;
+                }
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private synchronized long unsyncedRecordCount() { return unsyncedRecords; }
+
+    public long getRecordsWritten() {
+        lock.lock();
+        try {
+            return recordsWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized long getSyncs() { return syncs; }
+
+    // Syncs anything not yet on disk and closes the file.
+    @Override
+    public void close() throws IOException {
+        if (syncTimer != null) {
+            syncTimer.shutdownNow();
+        }
+        lock.lock();
+        try {
+            while (writing) {
+                written.awaitUninterruptibly();
+            }
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
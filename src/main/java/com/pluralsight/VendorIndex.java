@@ -0,0 +1,210 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps each vendor, compared without case and surrounding spaces, to the rows of that vendor.
+// Exact lookups are a single hash lookup. Prefix and fuzzy lookups run over the distinct vendor keys,
+// which are kept in a sorted array, so none of them ever scan the rows themselves.
+//
+// One thread adds rows while any number of threads read. Every lookup takes a row limit and only sees the rows
+// below it, so a reader holding a ledger snapshot of `limit` rows gets answers that match that snapshot.
+public class VendorIndex {
+    private final TransactionStore store;
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+    private Postings[] postingsByVendorId = new Postings[16]; // Saves normalizing the vendor name of every row.
+    private volatile String[] sortedKeys = new String[0];
+    private volatile boolean keysChanged;
+    private int size;
+
+    public VendorIndex(TransactionStore store) {
+        this.store = store;
+    }
+
+    // Indexes every row of the store that is not indexed yet.
+    public void addNewRows() {
+        for (int row = size; row < store.size(); row++) {
+            add(row);
+        }
+    }
+
+    public void add(int row) {
+        int vendorId = store.getVendorId(row);
+        if (vendorId >= postingsByVendorId.length) {
+            postingsByVendorId = Arrays.copyOf(postingsByVendorId, Math.max(vendorId + 1, postingsByVendorId.length * 2));
+        }
+        Postings rows = postingsByVendorId[vendorId];
+        if (rows == null) {
+            String key = normalize(store.getVendorName(vendorId));
+            rows = postings.get(key);
+            if (rows == null) {
+                rows = new Postings();
+                postings.put(key, rows);
+                keysChanged = true;
+            }
+            postingsByVendorId[vendorId] = rows;
+        }
+        rows.add(row);
+        size++;
+    }
+
+    public static String normalize(String vendor) {
+        return vendor.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Rows of the vendor with exactly this name, ignoring case. Rows are in the order they were added.
+    public IntList find(String vendor) {
+        return find(vendor, Integer.MAX_VALUE);
+    }
+
+    // The same, counting only rows below `limit`.
+    public IntList find(String vendor, int limit) {
+        return rowsOf(List.of(normalize(vendor)), limit);
+    }
+
+    // Vendor keys that start with the given text, found by binary search over the sorted keys.
+    public List<String> findByPrefix(String prefix) {
+        return findByPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    // The same, counting only vendors with a row below `limit`.
+    public List<String> findByPrefix(String prefix, int limit) {
+        String key = normalize(prefix);
+        String[] keys = keys();
+        List<String> matches = new ArrayList<>();
+        if (key.isEmpty()) {
+            return matches;
+        }
+        int i = Arrays.binarySearch(keys, key);
+        for (i = i < 0 ? -i - 1 : i; i < keys.length && keys[i].startsWith(key); i++) {
+            if (hasRowBelow(keys[i], limit)) {
+                matches.add(keys[i]);
+            }
+        }
+        return matches;
+    }
+
+    // Vendor keys within a small edit distance of the given text (one edit for short names, two for longer ones),
+    // closest first, so a typo such as "amazn" still finds "amazon".
+    public List<String> findSimilar(String vendor) {
+        return findSimilar(vendor, Integer.MAX_VALUE);
+    }
+
+    // The same, counting only vendors with a row below `limit`.
+    public List<String> findSimilar(String vendor, int limit) {
+        String key = normalize(vendor);
+        int maxDistance = key.length() <= 4 ? 1 : 2;
+        List<String> matches = new ArrayList<>();
+        List<Integer> distances = new ArrayList<>();
+        if (key.isEmpty()) {
+            return matches;
+        }
+        for (String candidate : keys()) {
+            int distance = editDistance(key, candidate, maxDistance);
+            if (distance <= maxDistance && hasRowBelow(candidate, limit)) {
+                int at = 0;
+                while (at < distances.size() && distances.get(at) <= distance) at++;
+                matches.add(at, candidate);
+                distances.add(at, distance);
+            }
+        }
+        return matches;
+    }
+
+    // Rows of every given vendor key.
+    public IntList rowsOf(List<String> keys) {
+        return rowsOf(keys, Integer.MAX_VALUE);
+    }
+
+    // Rows of every given vendor key that are below `limit`.
+    public IntList rowsOf(List<String> keys, int limit) {
+        IntList rows = new IntList();
+        for (String key : keys) {
+            Postings posting = postings.get(key);
+            if (posting != null) {
+                posting.copyTo(rows, limit);
+            }
+        }
+        return rows;
+    }
+
+    private boolean hasRowBelow(String key, int limit) {
+        Postings posting = postings.get(key);
+        return posting != null && posting.first() < limit;
+    }
+
+    private String[] keys() {
+        if (keysChanged) {
+            // Cleared before reading the keys, so a key added meanwhile marks them changed again
+            keysChanged = false;
+            String[] keys = postings.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            sortedKeys = keys;
+        }
+        return sortedKeys;
+    }
+
+    // Rows of one vendor, in the order they were added. Only one thread appends; readers first read `size`
+    // and then `rows`, so the array they get always holds at least that many rows.
+    private static class Postings {
+        private volatile int[] rows = new int[4];
+        private volatile int size;
+
+        void add(int row) {
+            int[] current = rows;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size + (size >> 1) + 1);
+            }
+            current[size] = row;
+            rows = current;
+            size = size + 1;
+        }
+
+        // The first row, or Integer.MAX_VALUE if there is none yet.
+        int first() {
+            return size == 0 ? Integer.MAX_VALUE : rows[0];
+        }
+
+        // Appends the rows below `limit`. Rows are ascending, so those form a prefix found by binary search.
+        void copyTo(IntList out, int limit) {
+            int count = size;
+            int[] current = rows;
+            int end = Arrays.binarySearch(current, 0, count, limit);
+            end = end < 0 ? -end - 1 : end;
+            for (int i = 0; i < end; i++) {
+                out.add(current[i]);
+            }
+        }
+    }
+
+    // Levenshtein distance, giving up with maxDistance + 1 as soon as every path is over the limit.
+    static int editDistance(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}